@@ -0,0 +1,351 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds the nodes and edges of a GeneralizedSuffixTree out of the generalized suffix array of a batch of documents.
+ * <p>
+ * The documents are concatenated, each one followed by a separator of its own, and the suffix array and the
+ * longest common prefix array of the concatenation are built in linear time. Scanning the suffixes in
+ * lexicographic order then gives the nodes of the tree bottom-up: a suffix ends at a node of its own
+ * (or at an existing one if it is a prefix of the next suffix), and a longest common prefix shorter than
+ * the open path closes the deeper nodes and opens a branching node where the two suffixes part.
+ * <p>
+ * The resulting tree has the same nodes, edge labels, indexes and suffix links as the one built by
+ * calling put for every document. The subtrees of the root do not share any node, so they can be built
+ * on separate threads once the suffix array is known.
+ */
+class BulkLoader {
+
+    private final GeneralizedSuffixTree tree;
+    private final CharArena arena;
+    private final List<String> documents;
+    private final int parallelism;
+
+    /**
+     * The concatenation of the documents, the separator after document i is i and
+     * a character c is mapped to documents.size() + (rank of c among the used characters)
+     */
+    private int[] text;
+    /**
+     * The document which the character at each position of <tt>text</tt> belongs to
+     */
+    private int[] owners;
+    /**
+     * The end position of each document in <tt>text</tt>, that is the position of its separator
+     */
+    private int[] ends;
+    private int[] sa;
+    private int[] lcp;
+
+    BulkLoader(GeneralizedSuffixTree tree, List<String> documents, int parallelism) {
+        this.tree = tree;
+        this.arena = tree.getArena();
+        this.documents = documents;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Adds all the documents to the tree, the index of each document is its position in the list.
+     */
+    void load() {
+        int length = documents.size();
+        for (int i = 0; i < documents.size(); i++) {
+            tree.addDocument(documents.get(i), i);
+            length += documents.get(i).length();
+        }
+
+        buildText(length);
+        sa = SuffixArrays.suffixArray(text, text.length == 0 ? 0 : max(text));
+        lcp = SuffixArrays.lcp(text, sa);
+        buildNodes();
+        text = null;
+        sa = null;
+        lcp = null;
+        linkSuffixes();
+    }
+
+    private void buildText(int length) {
+        boolean[] used = new boolean[Character.MAX_VALUE + 1];
+        for (String document : documents) {
+            for (int i = 0; i < document.length(); i++) {
+                used[document.charAt(i)] = true;
+            }
+        }
+        int[] symbols = new int[Character.MAX_VALUE + 1];
+        int symbol = documents.size();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (used[c]) {
+                symbols[c] = symbol++;
+            }
+        }
+
+        text = new int[length];
+        owners = new int[length];
+        ends = new int[documents.size()];
+        int position = 0;
+        for (int i = 0; i < documents.size(); i++) {
+            String document = documents.get(i);
+            for (int j = 0; j < document.length(); j++) {
+                owners[position] = i;
+                text[position++] = symbols[document.charAt(j)];
+            }
+            ends[i] = position;
+            owners[position] = i;
+            text[position++] = i;
+        }
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Scans the suffixes in lexicographic order and builds the nodes of the tree.
+     * The suffixes starting with a separator come first and are skipped.
+     * <p>
+     * With a parallelism greater than one, the suffixes are partitioned by their first character and the
+     * subtree of each partition is built on a separate fork-join task, as the partitions share no node
+     * other than the root. The subtrees are attached to the root once all the tasks are done.
+     */
+    private void buildNodes() {
+        int n = documents.size();
+        List<SubtreeTask> tasks = new ArrayList<>();
+        if (parallelism == 1) {
+            tasks.add(new SubtreeTask(n, sa.length));
+        } else {
+            int from = n;
+            for (int i = n + 1; i <= sa.length; i++) {
+                if (i == sa.length || text[sa[i]] != text[sa[from]]) {
+                    tasks.add(new SubtreeTask(from, i));
+                    from = i;
+                }
+            }
+        }
+        run(tasks);
+
+        Node root = tree.getRoot();
+        for (SubtreeTask task : tasks) {
+            for (Edge e : task.rootEdges) {
+                root.addEdge(e.getLabelChar(0), e);
+            }
+        }
+    }
+
+    /**
+     * Runs the given tasks, on a fork-join pool of <tt>parallelism</tt> threads unless it is one.
+     */
+    private void run(final List<? extends ForkJoinTask<?>> tasks) {
+        if (parallelism == 1) {
+            for (ForkJoinTask<?> task : tasks) {
+                task.invoke();
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the subtrees of the suffixes in sa[from, to), which must not share a node with
+     * the suffixes out of the range other than the root.
+     * The edges from the root are kept in <tt>rootEdges</tt> instead of being added to the root.
+     */
+    private class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final List<Edge> rootEdges = new ArrayList<>();
+
+        /**
+         * The stack of the nodes on the path of the last suffix, with an occurrence of each one in <tt>text</tt>
+         */
+        private Node[] stack = new Node[16];
+        private int[] stackPositions = new int[16];
+        private int stackSize = 0;
+
+        SubtreeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            push(tree.getRoot(), 0);
+
+            for (int i = from; i < to; i++) {
+                int position = sa[i];
+                int document = owners[position];
+                int suffixLength = ends[document] - position;
+                // the first suffix has nothing in common with the ones before the range
+                int commonLength = i == from ? 0 : lcp[i];
+
+                // close the nodes which are deeper than the common prefix with the previous suffix
+                while (depth(stackSize - 1) > commonLength) {
+                    Node child = stack[stackSize - 1];
+                    int childPosition = stackPositions[stackSize - 1];
+                    stackSize--;
+                    if (depth(stackSize - 1) < commonLength) {
+                        // the previous suffix and this one part in the middle of the edge to child
+                        Node branch = new Node();
+                        branch.increaseSubStringLength(commonLength);
+                        attach(branch, child, childPosition);
+                        push(branch, childPosition);
+                    } else {
+                        attach(stack[stackSize - 1], child, childPosition);
+                    }
+                }
+
+                if (suffixLength == commonLength) {
+                    // the suffix ends at the node of the common prefix
+                    stack[stackSize - 1].addRef(document);
+                } else {
+                    Node leaf = new Node();
+                    leaf.increaseSubStringLength(suffixLength);
+                    leaf.addRef(document);
+                    push(leaf, position);
+                }
+            }
+
+            while (stackSize > 1) {
+                Node child = stack[stackSize - 1];
+                int childPosition = stackPositions[stackSize - 1];
+                stackSize--;
+                attach(stack[stackSize - 1], child, childPosition);
+            }
+            stack = null;
+            stackPositions = null;
+        }
+
+        private int depth(int stackIndex) {
+            return stack[stackIndex].getSubstringLength();
+        }
+
+        private void push(Node node, int position) {
+            if (stackSize == stack.length) {
+                Node[] nodeCopy = new Node[stackSize * 2];
+                System.arraycopy(stack, 0, nodeCopy, 0, stackSize);
+                stack = nodeCopy;
+                int[] positionCopy = new int[stackSize * 2];
+                System.arraycopy(stackPositions, 0, positionCopy, 0, stackSize);
+                stackPositions = positionCopy;
+            }
+            stack[stackSize] = node;
+            stackPositions[stackSize] = position;
+            stackSize++;
+        }
+
+        private void attach(Node parent, Node child, int position) {
+            Edge edge = createEdge(parent, child, position);
+            if (parent == tree.getRoot()) {
+                rootEdges.add(edge);
+            } else {
+                parent.addEdge(edge.getLabelChar(0), edge);
+            }
+        }
+    }
+
+    /**
+     * Creates the edge from <tt>parent</tt> to <tt>child</tt>, whose string occurs at <tt>position</tt> of the text.
+     * The text has one separator before each document, so the offset of the label in the arena
+     * is shifted back by the index of the document.
+     */
+    private Edge createEdge(Node parent, Node child, int position) {
+        int parentLength = parent.getSubstringLength();
+        int labelOffset = position - owners[position] + parentLength;
+        Edge edge = new Edge(arena, labelOffset, child.getSubstringLength() - parentLength, child, parent);
+        child.setSourceEdge(edge);
+        return edge;
+    }
+
+    /**
+     * Sets the suffix link of every node, parents first. If the string of a node is a.x, the
+     * string x is found by descending from the suffix link of its parent, comparing label lengths only.
+     * <p>
+     * The links of each subtree of the root are set by a task of their own: the tree is only read
+     * apart from the links, and the link of a parent is set by the same task before the ones of its children.
+     */
+    private void linkSuffixes() {
+        owners = null;
+        ends = null;
+        List<LinkTask> tasks = new ArrayList<>();
+        for (Edge e : tree.getRoot().getEdges().values()) {
+            tasks.add(new LinkTask(e.getDest()));
+        }
+        run(tasks);
+    }
+
+    private class LinkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Node subtree;
+
+        LinkTask(Node subtree) {
+            this.subtree = subtree;
+        }
+
+        @Override
+        protected void compute() {
+            Node root = tree.getRoot();
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(subtree);
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                for (Edge e : node.getEdges().values()) {
+                    nodes.add(e.getDest());
+                }
+
+                Node parent = node.getSourceNode();
+                int length = node.getSubstringLength();
+                if (length == 1) {
+                    node.setSuffix(root);
+                    continue;
+                }
+
+                // the string of node occurs in the arena at offset, the one of its suffix link at offset + 1
+                int offset = node.getSourceEdge().getLabelOffset() - parent.getSubstringLength();
+                Node current = parent == root ? root : parent.getSuffix();
+                while (current.getSubstringLength() < length - 1) {
+                    current = current.getEdge(arena.charAt(offset + 1 + current.getSubstringLength())).getDest();
+                }
+                node.setSuffix(current);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * An append-only array of characters which holds the text of all the documents inserted in a tree.
+ * Edge labels are stored as (offset, length) pairs into the arena instead of separate strings.
+ * <p>
+ * As it is handled, it resembles an ArrayList: when it becomes full it
+ * is copied to another array twice as big.
+ */
+class CharArena implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The starting size of the char[] array
+     */
+    private static final int START_SIZE = 16;
+
+    private char[] chars;
+
+    private int size = 0;
+
+    CharArena() {
+        chars = new char[START_SIZE];
+    }
+
+    /**
+     * Appends the given text to the arena.
+     *
+     * @param text the text to append
+     * @return the offset of the first character of <tt>text</tt> in the arena
+     */
+    int append(String text) {
+        int offset = size;
+        if (size + text.length() > chars.length) {
+            int capacity = Math.max(chars.length * 2, size + text.length());
+            char[] copy = new char[capacity];
+            System.arraycopy(chars, 0, copy, 0, size);
+            chars = copy;
+        }
+        text.getChars(0, text.length(), chars, size);
+        size += text.length();
+        return offset;
+    }
+
+    char charAt(int offset) {
+        return chars[offset];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Tests whether <tt>length</tt> characters of the arena starting from <tt>offset</tt>
+     * are equal to the ones of <tt>text</tt> starting from <tt>textOffset</tt>.
+     */
+    boolean regionMatches(int offset, String text, int textOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != text.charAt(textOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String substring(int offset, int length) {
+        return new String(chars, offset, length);
+    }
+}
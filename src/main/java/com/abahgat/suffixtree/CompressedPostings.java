@@ -0,0 +1,209 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The posting lists of all the nodes of a tree, delta-encoded with variable-length integers in a single byte array.
+ * <p>
+ * Every number takes 7 bits per byte, the high bit telling whether more bytes follow. The posting list of a node
+ * starts with its size. A short list is then written as its indexes in increasing order, each one as the
+ * difference with the previous one. A longer list is split by document length into the geometric buckets of
+ * LengthPartitionedIndex, and written as a sequence of groups, one per non-empty bucket: the difference with
+ * the bucket of the previous group, the number of indexes in the group, then its indexes as differences with the
+ * previous one of the group. There are a few dozen buckets at most, so the groups cost a few bytes per list
+ * however spread the document lengths are, and the indexes mostly take one or two bytes instead of four.
+ * <p>
+ * A decoder stops at the first group of documents too long to be similar enough to a target, and drops the
+ * documents of the last group it reads which are still too long, so it returns the same documents as the binary
+ * search of FrozenTree, in the order of the groups rather than by document length.
+ */
+class CompressedPostings implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The size from which a posting list is split into groups by document length
+     */
+    static final int GROUPED_SIZE = 16;
+
+    /**
+     * The posting list of node i is bytes[offsets[i], offsets[i + 1])
+     */
+    private final int[] offsets;
+    private final byte[] bytes;
+    /**
+     * The length of the document of each index
+     */
+    private final int[] documentLengths;
+
+    /**
+     * Encodes the index sets of the given nodes, which must be in breadth-first order and have their indices populated.
+     */
+    CompressedPostings(List<Node> nodes, int[] documentLengths) {
+        this.documentLengths = documentLengths;
+        offsets = new int[nodes.size() + 1];
+        byte[] buffer = new byte[1024];
+        int position = 0;
+        long[] keys = new long[16];
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            int count = node.indexSize;
+            int[] indexSet = node.getIndexSet();
+
+            // a number takes at most 5 bytes, and there are at most as many groups as indexes
+            if (buffer.length - position < 5 + 15 * count) {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + 5 + 15 * count));
+            }
+            position = write(buffer, position, count);
+            if (count < GROUPED_SIZE) {
+                // the index set is sorted
+                int previousIndex = 0;
+                for (int j = 0; j < count; j++) {
+                    position = write(buffer, position, indexSet[j] - previousIndex);
+                    previousIndex = indexSet[j];
+                }
+                offsets[i + 1] = position;
+                continue;
+            }
+
+            if (keys.length < count) {
+                keys = new long[Math.max(count, 2 * keys.length)];
+            }
+            for (int j = 0; j < count; j++) {
+                int index = indexSet[j];
+                keys[j] = (long) LengthPartitionedIndex.partition(documentLengths[index]) << 32 | index;
+            }
+            Arrays.sort(keys, 0, count);
+
+            int previousBucket = 0;
+            for (int start = 0; start < count; ) {
+                int bucket = (int) (keys[start] >>> 32);
+                int end = start + 1;
+                while (end < count && (int) (keys[end] >>> 32) == bucket) {
+                    end++;
+                }
+                position = write(buffer, position, bucket - previousBucket);
+                position = write(buffer, position, end - start);
+                int previousIndex = 0;
+                for (int j = start; j < end; j++) {
+                    int index = (int) keys[j];
+                    position = write(buffer, position, index - previousIndex);
+                    previousIndex = index;
+                }
+                previousBucket = bucket;
+                start = end;
+            }
+            offsets[i + 1] = position;
+        }
+        bytes = Arrays.copyOf(buffer, position);
+    }
+
+    private static int write(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Returns the number of bytes taken by the encoded posting lists
+     */
+    int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Decodes posting lists into a buffer of its own, which is reused from one node to the next.
+     * A decoder is not thread-safe.
+     */
+    class Decoder {
+
+        private int[] results = new int[16];
+        private int position;
+
+        /**
+         * Decodes the indexes of the posting list of <tt>node</tt> whose document is at most <tt>maximumLength</tt>
+         * long at the start of the array returned by getResults and returns their number. The indexes are sorted
+         * by the bucket of their document length, then by index.
+         */
+        int decode(int node, int maximumLength) {
+            position = offsets[node];
+            int end = offsets[node + 1];
+            int size = read();
+            if (results.length < size) {
+                results = Arrays.copyOf(results, Math.max(size, 2 * results.length));
+            }
+            int count = 0;
+            if (size < GROUPED_SIZE) {
+                int index = 0;
+                for (int j = 0; j < size; j++) {
+                    index += read();
+                    if (documentLengths[index] <= maximumLength) {
+                        results[count++] = index;
+                    }
+                }
+                return count;
+            }
+
+            int maximumBucket = LengthPartitionedIndex.partition(maximumLength);
+            int bucket = 0;
+            while (position < end) {
+                bucket += read();
+                if (bucket > maximumBucket) {
+                    break;
+                }
+                int groupSize = read();
+                int index = 0;
+                if (bucket < maximumBucket) {
+                    for (int j = 0; j < groupSize; j++) {
+                        index += read();
+                        results[count++] = index;
+                    }
+                } else {
+                    // the last bucket may still hold documents which are too long
+                    for (int j = 0; j < groupSize; j++) {
+                        index += read();
+                        if (documentLengths[index] <= maximumLength) {
+                            results[count++] = index;
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        private int read() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        int[] getResults() {
+            return results;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lists the distinct documents under a node without storing an index set per node.
+ * <p>
+ * The indexes held by the nodes are laid out in depth-first order in <tt>documents</tt>, so that the indexes of
+ * the subtree of node i are the range [rangeStart[i], rangeEnd[i]). The position of the previous occurrence of
+ * the same index is kept in <tt>previous</tt> (-1 for the first one), and an index occurs for the first time
+ * in a range [lo, hi) exactly at the positions p of the range with previous[p] &lt; lo. Those are found by
+ * repeatedly taking the position of the minimum of <tt>previous</tt> over a range (Muthukrishnan's
+ * document listing), which costs a range minimum query per listed document.
+ * <p>
+ * The range minimum queries use a sparse table over blocks of BLOCK_SIZE positions and scan the partial
+ * blocks at both ends, so the whole structure takes O(n) memory where n is the number of indexes held by
+ * the nodes, i.e. the number of suffixes in the tree.
+ */
+class DocumentListing implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of consecutive positions summarized by one entry of the sparse table
+     */
+    private static final int BLOCK_SIZE = 32;
+
+    private final int[] rangeStart;
+    private final int[] rangeEnd;
+    private final int[] documents;
+    private final int[] previous;
+    /**
+     * blockMinima[k][b] is the position of the minimum of previous over the blocks [b, b + 2^k)
+     */
+    private final int[][] blockMinima;
+
+    /**
+     * Lays out the indexes held by the given nodes, which must be in breadth-first order with their ids set.
+     */
+    DocumentListing(List<Node> nodes) {
+        int size = nodes.size();
+        rangeStart = new int[size];
+        rangeEnd = new int[size];
+
+        // the number of indexes in each subtree, children come after their parent in breadth-first order
+        int[] subtreeCounts = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            subtreeCounts[i] += node.getNodeData().length;
+            if (node.getSourceEdge() != null) {
+                subtreeCounts[id(node.getSourceNode())] += subtreeCounts[i];
+            }
+        }
+        documents = new int[subtreeCounts[SuffixTreeView.ROOT]];
+
+        int[] stack = new int[size];
+        int top = 0;
+        int position = 0;
+        stack[top++] = SuffixTreeView.ROOT;
+        while (top > 0) {
+            int i = stack[--top];
+            Node node = nodes.get(i);
+            rangeStart[i] = position;
+            rangeEnd[i] = position + subtreeCounts[i];
+
+            int[] data = node.getNodeData();
+            System.arraycopy(data, 0, documents, position, data.length);
+            position += data.length;
+
+            for (Edge e : node.getEdges().values()) {
+                stack[top++] = e.getDestNodeId();
+            }
+        }
+
+        previous = new int[documents.length];
+        int[] lastPositions = new int[documents.length == 0 ? 0 : max(documents) + 1];
+        Arrays.fill(lastPositions, -1);
+        for (int p = 0; p < documents.length; p++) {
+            previous[p] = lastPositions[documents[p]];
+            lastPositions[documents[p]] = p;
+        }
+
+        int blocks = (documents.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int levels = 1;
+        while ((1 << levels) <= blocks) {
+            levels++;
+        }
+        blockMinima = new int[levels][];
+        blockMinima[0] = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            blockMinima[0][b] = scanMinimum(b * BLOCK_SIZE, Math.min((b + 1) * BLOCK_SIZE, documents.length));
+        }
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            blockMinima[k] = new int[blocks - (1 << k) + 1];
+            for (int b = 0; b < blockMinima[k].length; b++) {
+                blockMinima[k][b] = minimum(blockMinima[k - 1][b], blockMinima[k - 1][b + half]);
+            }
+        }
+    }
+
+    private static int id(Node node) {
+        return node.getSourceEdge() == null ? SuffixTreeView.ROOT : node.getSourceEdge().getDestNodeId();
+    }
+
+    private static int max(int[] values) {
+        int max = values[0];
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the number of indexes laid out, which is the memory taken by the structure up to a constant factor
+     */
+    int size() {
+        return documents.length;
+    }
+
+    /**
+     * Lists the distinct indexes under a node into buffers of its own, which are reused from one node to the next.
+     * A lister is not thread-safe.
+     */
+    class Lister {
+
+        private int[] results = new int[16];
+        private int[] stack = new int[16];
+
+        /**
+         * Lists the distinct indexes of the subtree of <tt>node</tt>, in no particular order, at the start of
+         * the array returned by getResults and returns their number.
+         */
+        int list(int node) {
+            int lo = rangeStart[node];
+            int count = 0;
+            int top = 0;
+            stack[top++] = lo;
+            stack[top++] = rangeEnd[node];
+            while (top > 0) {
+                int end = stack[--top];
+                int start = stack[--top];
+                if (start >= end) {
+                    continue;
+                }
+                int p = rangeMinimum(start, end);
+                if (previous[p] >= lo) {
+                    // every index of [start, end) occurs before, within the range of the node
+                    continue;
+                }
+                if (count == results.length) {
+                    results = Arrays.copyOf(results, count * 2);
+                }
+                results[count++] = documents[p];
+
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = start;
+                stack[top++] = p;
+                stack[top++] = p + 1;
+                stack[top++] = end;
+            }
+            return count;
+        }
+
+        int[] getResults() {
+            return results;
+        }
+    }
+
+    /**
+     * Returns the position of the minimum of previous[start, end), which must not be empty
+     */
+    private int rangeMinimum(int start, int end) {
+        int firstBlock = (start + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int lastBlock = end / BLOCK_SIZE;
+        if (firstBlock >= lastBlock) {
+            return scanMinimum(start, end);
+        }
+
+        int result = start < firstBlock * BLOCK_SIZE ? scanMinimum(start, firstBlock * BLOCK_SIZE) : -1;
+        int k = 31 - Integer.numberOfLeadingZeros(lastBlock - firstBlock);
+        result = minimum(result, blockMinima[k][firstBlock]);
+        result = minimum(result, blockMinima[k][lastBlock - (1 << k)]);
+        if (lastBlock * BLOCK_SIZE < end) {
+            result = minimum(result, scanMinimum(lastBlock * BLOCK_SIZE, end));
+        }
+        return result;
+    }
+
+    private int scanMinimum(int start, int end) {
+        int result = start;
+        for (int p = start + 1; p < end; p++) {
+            if (previous[p] < previous[result]) {
+                result = p;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position with the smaller previous occurrence, -1 standing for no position
+     */
+    private int minimum(int p, int q) {
+        if (p == -1) {
+            return q;
+        }
+        return previous[q] < previous[p] ? q : p;
+    }
+}
@@ -21,6 +21,9 @@ import java.io.Serializable;
 /**
  * Represents an Edge in the Suffix Tree.
  * It has a label and a destination Node
+ * <p>
+ * The label is not stored as a string of its own, it is the (labelOffset, labelLength)
+ * region of the arena which holds the text of the documents.
  */
 public class Edge implements Serializable{
 	
@@ -30,17 +33,53 @@ public class Edge implements Serializable{
 	 */
 	private static final long serialVersionUID = 1L;
 	
-	private String label;
+	private final CharArena arena;
+	private int labelOffset;
+	private int labelLength;
     private transient Node dest;
-    private int destNodeId;
+    private int destNodeId = SuffixTreeView.NONE;
     private Node source;
 
+    /**
+     * Returns the label of this edge. The string is built from the arena on every call.
+     */
     public String getLabel() {
-        return label;
+        return arena.substring(labelOffset, labelLength);
+    }
+
+    public int getLabelOffset() {
+        return labelOffset;
+    }
+
+    public int getLabelLength() {
+        return labelLength;
     }
 
+    /**
+     * Returns the character at position <tt>index</tt> of the label
+     */
+    public char getLabelChar(int index) {
+        return arena.charAt(labelOffset + index);
+    }
+
+    /**
+     * Sets the label of this edge by appending <tt>label</tt> to its arena, the edge then no longer shares
+     * the text of the documents. The tree itself moves labels with setLabel(int, int).
+     *
+     * @deprecated the labels are regions of the arena, kept for compatibility only
+     */
+    @Deprecated
     public void setLabel(String label) {
-        this.label = label;
+        setLabel(arena.append(label), label.length());
+    }
+
+    void setLabel(int labelOffset, int labelLength) {
+        this.labelOffset = labelOffset;
+        this.labelLength = labelLength;
+    }
+
+    CharArena getArena() {
+        return arena;
     }
 
     public Node getDest() {
@@ -51,8 +90,22 @@ public class Edge implements Serializable{
         this.dest = dest;
     }
 
+    /**
+     * Creates an edge whose label is copied to an arena of its own. This is the compatibility path for callers
+     * outside of the package, the tree builds its edges on its shared arena.
+     */
     public Edge(String label, Node dest, Node source) {
-        this.label = label;
+        this.arena = new CharArena();
+        this.labelOffset = arena.append(label);
+        this.labelLength = label.length();
+        this.dest = dest;
+        this.source = source;
+    }
+
+    Edge(CharArena arena, int labelOffset, int labelLength, Node dest, Node source) {
+        this.arena = arena;
+        this.labelOffset = labelOffset;
+        this.labelLength = labelLength;
         this.dest = dest;
         this.source = source;
     }
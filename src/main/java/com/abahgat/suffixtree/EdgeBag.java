@@ -17,8 +17,10 @@ package com.abahgat.suffixtree;
 
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,54 +28,127 @@ import java.util.Set;
  * A specialized implementation of Map that uses native char types and sorted
  * arrays to keep minimize the memory footprint.
  * Implements only the operations that are needed within the suffix tree context.
+ * <p>
+ * The representation adapts to the number of edges:
+ * - a single edge is kept inline, without any array;
+ * - a few edges are kept in arrays sorted by char and searched linearly;
+ * - more edges are binary searched, the arrays grow by doubling and a new edge is inserted in place;
+ * - when there are many edges over a narrow range of chars (e.g. the root) a table indexed by char is added.
+ * The edges are always returned sorted by their char.
  */
 class EdgeBag implements Map<Character, Edge>, Serializable {
     /**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private char[] chars;
-    private Edge[] values;
     private static final int BSEARCH_THRESHOLD = 6;
+    /**
+     * The starting size of the arrays, once there are two edges
+     */
+    private static final int START_SIZE = 4;
+    /**
+     * The number of edges from which a direct-indexed table may be used
+     */
+    private static final int TABLE_THRESHOLD = 16;
+    /**
+     * The table is used only if the range of chars is at most this many times the number of edges
+     */
+    private static final int TABLE_DENSITY = 4;
+
+    private int size;
+    private char singleChar;
+    private Edge singleEdge;
+    private char[] chars;
+    private Edge[] values;
+    /**
+     * The edges indexed by (char - tableBase), null if the node is not dense
+     */
+    private Edge[] table;
+    private char tableBase;
 
     public Edge put(Character character, Edge e) {
-        char c = character.charValue();
-        
-        if (chars == null) {
-            chars = new char[0];
-            values = new Edge[0];
+        return put(character.charValue(), e);
+    }
+
+    public Edge put(char c, Edge e) {
+        if (size == 0) {
+            singleChar = c;
+            singleEdge = e;
+            size = 1;
+            return null;
         }
-        int idx = search(c);
-        Edge previous = null;
 
-        if (idx < 0) {
-            int currsize = chars.length;
-            char[] copy = new char[currsize + 1];
-            System.arraycopy(chars, 0, copy, 0, currsize);
-            chars = copy;
-            Edge[] copy1 = new Edge[currsize + 1];
-            System.arraycopy(values, 0, copy1, 0, currsize);
-            values = copy1;
-            chars[currsize] = c;
-            values[currsize] = e;
-            currsize++;
-            if (currsize > BSEARCH_THRESHOLD) {
-                sortArrays();
+        if (chars == null) {
+            if (c == singleChar) {
+                Edge previous = singleEdge;
+                singleEdge = e;
+                return previous;
             }
-        } else {
-            previous = values[idx];
+            chars = new char[START_SIZE];
+            values = new Edge[START_SIZE];
+            chars[0] = singleChar;
+            values[0] = singleEdge;
+            singleEdge = null;
+        }
+
+        int idx = search(c);
+        if (idx >= 0) {
+            Edge previous = values[idx];
             values[idx] = e;
+            if (table != null) {
+                table[c - tableBase] = e;
+            }
+            return previous;
+        }
+
+        int insertion = -idx - 1;
+        if (size == chars.length) {
+            chars = Arrays.copyOf(chars, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(chars, insertion, chars, insertion + 1, size - insertion);
+        System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+        chars[insertion] = c;
+        values[insertion] = e;
+        size++;
+
+        if (table != null && c >= tableBase && c - tableBase < table.length) {
+            table[c - tableBase] = e;
+        } else if (size >= TABLE_THRESHOLD) {
+            buildTable();
         }
-        return previous;
+        return null;
     }
-    
-     
+
+    /**
+     * Builds the direct-indexed table if the chars are dense enough, drops it otherwise.
+     */
+    private void buildTable() {
+        int span = chars[size - 1] - chars[0] + 1;
+        if (span > size * TABLE_DENSITY) {
+            table = null;
+            return;
+        }
+        tableBase = chars[0];
+        table = new Edge[span];
+        for (int i = 0; i < size; i++) {
+            table[chars[i] - tableBase] = values[i];
+        }
+    }
+
     public Edge get(Object maybeCharacter) {
         return get(((Character) maybeCharacter).charValue());  // throws if cast fails.
     }
 
     public Edge get(char c) {
-        
+        if (table != null) {
+            int i = c - tableBase;
+            return i >= 0 && i < table.length ? table[i] : null;
+        }
+        if (chars == null) {
+            return size == 1 && c == singleChar ? singleEdge : null;
+        }
+
         int idx = search(c);
         if (idx < 0) {
             return null;
@@ -81,56 +156,53 @@ class EdgeBag implements Map<Character, Edge>, Serializable {
         return values[idx];
     }
 
+    /**
+     * Searches <tt>c</tt> in the sorted chars.
+     *
+     * @return the index of <tt>c</tt> if it is present, (-(insertion point) - 1) otherwise
+     */
     private int search(char c) {
-        if (chars == null)
-            return -1;
-        
-        if (chars.length > BSEARCH_THRESHOLD) {
-            return Arrays.binarySearch(chars, c);
+        if (size > BSEARCH_THRESHOLD) {
+            return Arrays.binarySearch(chars, 0, size, c);
         }
 
-        for (int i = 0; i < chars.length; i++) {
-            if (c == chars[i]) {
-                return i;
+        for (int i = 0; i < size; i++) {
+            if (c <= chars[i]) {
+                return c == chars[i] ? i : -i - 1;
             }
         }
-        return -1;
+        return -size - 1;
     }
 
-     
-    public Collection<Edge> values() {
-        return Arrays.asList(values == null ? new Edge[0] : values);
-    }
-    
     /**
-     * A trivial implementation of sort, used to sort chars[] and values[] according to the data in chars.
-     * 
-     * It was preferred to faster sorts (like qsort) because of the small sizes (<=36) of the collections involved.
+     * Returns the edges sorted by their char. The collection is a view which is not
+     * meant to be used once the bag is changed.
      */
-    private void sortArrays() {
-        for (int i = 0; i < chars.length; i++) {
-         for (int j = i; j > 0; j--) {
-            if (chars[j-1] > chars[j]) {
-               char swap = chars[j];
-               chars[j] = chars[j-1];
-               chars[j-1] = swap;
-
-               Edge swapEdge = values[j];
-               values[j] = values[j-1];
-               values[j-1] = swapEdge;
+    public Collection<Edge> values() {
+        if (chars == null) {
+            return size == 0 ? Collections.<Edge>emptyList() : Collections.singletonList(singleEdge);
+        }
+        return new AbstractList<Edge>() {
+            @Override
+            public Edge get(int index) {
+                return values[index];
+            }
+
+            @Override
+            public int size() {
+                return size;
             }
-         }
-      }
+        };
     }
     
      
     public boolean isEmpty() {
-        return chars == null || chars.length == 0;
+        return size == 0;
     }
     
      
     public int size() {
-        return chars == null ? 0 : chars.length;
+        return size;
     }
     
      
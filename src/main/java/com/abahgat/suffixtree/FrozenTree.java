@@ -0,0 +1,428 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable suffix tree stored as flat primitive arrays instead of Node, EdgeBag and Edge objects.
+ * <p>
+ * The nodes are laid out in the breadth-first order computed by GeneralizedSuffixTree.createNodeArray,
+ * so the children of a node have consecutive ids, sorted by the first char of their labels, and the children
+ * of node i come right after the ones of node i - 1. Every array is indexed by node id and describes the edge
+ * which enters the node, if any. The posting lists of all the nodes are concatenated in a single array.
+ * Each posting list is sorted by document length, then by index, so that the documents too long to be similar
+ * enough to a target through the string of a node can be cut off by a binary search.
+ * <p>
+ * Alternatively the posting lists are delta-encoded by CompressedPostings, or not stored at all and the documents
+ * under a node are listed from its depth-first range by a DocumentListing, which takes memory linear in the number
+ * of suffixes rather than in the sum of the posting list sizes. The queries must then go through view().
+ */
+class FrozenTree implements SuffixTreeView, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CharArena arena;
+
+    /**
+     * The children of node i are the nodes [childStart[i], childStart[i + 1])
+     */
+    private final int[] childStart;
+    private final char[] firstChars;
+    private final int[] labelOffsets;
+    private final int[] labelLengths;
+    private final int[] parents;
+    /**
+     * The nearest ancestor of each node which has more postings than the node, null if the parents are climbed
+     * instead
+     */
+    private final int[] contributingAncestors;
+    private final int[] suffixes;
+    private final int[] substringLengths;
+    /**
+     * The posting list of node i is postings[postingStart[i], postingStart[i + 1])
+     */
+    private final int[] postingStart;
+    private final int[] postings;
+    /**
+     * The length of the document of each index
+     */
+    private final int[] documentLengths;
+    /**
+     * The number of documents which contain the string of each node, null if it is read from postingStart or
+     * if the index sets were cut at a minimum ratio
+     */
+    private final int[] documentCounts;
+    /**
+     * The encoded posting lists, null unless the format is COMPRESSED
+     */
+    private final CompressedPostings compressed;
+    /**
+     * The listing of the documents under each node, null unless the format is LISTING
+     */
+    private final DocumentListing listing;
+
+    /**
+     * Copies the given nodes, which must be in the order computed by createNodeArray and have their indices populated.
+     *
+     * @param format          how the posting lists are stored
+     * @param documentLengths the length of the document of each index
+     * @param minimumRatio    the minimum ratio the index sets of the nodes were cut at
+     * @param ancestorJumps   whether to keep the contributing ancestor of each node
+     */
+    FrozenTree(List<Node> nodes, CharArena arena, GeneralizedSuffixTree.PostingFormat format, int[] documentLengths,
+               float minimumRatio, boolean ancestorJumps) {
+        this.arena = arena;
+        this.documentLengths = documentLengths;
+        int size = nodes.size();
+        childStart = new int[size + 1];
+        firstChars = new char[size];
+        labelOffsets = new int[size];
+        labelLengths = new int[size];
+        parents = new int[size];
+        // below a minimum ratio, an index set no longer contains the ones of the children
+        contributingAncestors = ancestorJumps && minimumRatio <= 0 ? new int[size] : null;
+        suffixes = new int[size];
+        substringLengths = new int[size];
+        listing = format == GeneralizedSuffixTree.PostingFormat.LISTING ? new DocumentListing(nodes) : null;
+        compressed = format == GeneralizedSuffixTree.PostingFormat.COMPRESSED
+                ? new CompressedPostings(nodes, documentLengths) : null;
+        documentCounts = format != GeneralizedSuffixTree.PostingFormat.ARRAY && minimumRatio <= 0 ? new int[size] : null;
+        if (format != GeneralizedSuffixTree.PostingFormat.ARRAY) {
+            postingStart = null;
+            postings = null;
+        } else {
+            postingStart = new int[size + 1];
+            int postingCount = 0;
+            for (Node node : nodes) {
+                postingCount += node.indexSize;
+            }
+            postings = new int[postingCount];
+        }
+
+        childStart[0] = 1;
+        for (int i = 0; i < size; i++) {
+            Node node = nodes.get(i);
+            childStart[i + 1] = childStart[i] + node.getEdges().size();
+            substringLengths[i] = node.getSubstringLength();
+            suffixes[i] = node.getSuffix() == null ? NONE : id(node.getSuffix());
+
+            Edge edge = node.getSourceEdge();
+            if (edge == null) {
+                parents[i] = NONE;
+                if (contributingAncestors != null) {
+                    contributingAncestors[i] = NONE;
+                }
+            } else {
+                parents[i] = id(edge.getSource());
+                if (contributingAncestors != null) {
+                    // the parent comes first in breadth-first order
+                    contributingAncestors[i] = edge.getSource().indexSize > node.indexSize
+                            ? parents[i] : contributingAncestors[parents[i]];
+                }
+                firstChars[i] = edge.getLabelChar(0);
+                labelOffsets[i] = edge.getLabelOffset();
+                labelLengths[i] = edge.getLabelLength();
+            }
+
+            if (documentCounts != null) {
+                documentCounts[i] = node.indexSize;
+            }
+            if (postings != null) {
+                System.arraycopy(node.getIndexSet(), 0, postings, postingStart[i], node.indexSize);
+                postingStart[i + 1] = postingStart[i] + node.indexSize;
+                sortByLength(postingStart[i], postingStart[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Sorts postings[start, end) by document length, then by index
+     */
+    private void sortByLength(int start, int end) {
+        long[] keys = new long[end - start];
+        for (int i = start; i < end; i++) {
+            keys[i - start] = (long) documentLengths[postings[i]] << 32 | postings[i];
+        }
+        Arrays.sort(keys);
+        for (int i = start; i < end; i++) {
+            postings[i] = (int) keys[i - start];
+        }
+    }
+
+    /**
+     * Returns the number of documents which contain the string of <tt>node</tt>, which the posting list of the node
+     * holds unless it was cut at a minimum ratio
+     */
+    int countDocuments(int node) {
+        if (postingStart != null) {
+            return postingStart[node + 1] - postingStart[node];
+        }
+        if (documentCounts != null) {
+            return documentCounts[node];
+        }
+        // the index sets were cut, but the listing holds every document
+        return view().getPostingEnd(node);
+    }
+
+    boolean listsDocuments() {
+        return listing != null;
+    }
+
+    /**
+     * Returns the view to query the tree with, the tree itself when the posting lists are stored as they are and
+     * otherwise a view which decodes or lists the documents of a node when its postings are asked for.
+     * Such a view must be used by a single thread.
+     */
+    SuffixTreeView view() {
+        if (listing != null) {
+            return new ListingView();
+        }
+        return compressed != null ? new DecodingView() : this;
+    }
+
+    private static int id(Node node) {
+        return node.getSourceEdge() == null ? ROOT : node.getSourceEdge().getDestNodeId();
+    }
+
+    public int size() {
+        return substringLengths.length;
+    }
+
+    /**
+     * Returns the child of <tt>node</tt> whose label starts with <tt>c</tt>, NONE if there is none
+     */
+    public int getChild(int node, char c) {
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midVal = firstChars[mid];
+
+            if (midVal < c)
+                low = mid + 1;
+            else if (midVal > c)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return NONE;
+    }
+
+    public int searchNode(String word) {
+        int currentNode = ROOT;
+
+        for (int i = 0; i < word.length(); ) {
+            // follow the edge corresponding to this char
+            int child = getChild(currentNode, word.charAt(i));
+            if (child == NONE) {
+                return NONE;
+            }
+
+            int labelLength = labelLengths[child];
+            int lenToMatch = Math.min(word.length() - i, labelLength);
+            if (!arena.regionMatches(labelOffsets[child], word, i, lenToMatch)) {
+                // the label on the edge does not correspond to the one in the string to search
+                return NONE;
+            }
+
+            if (labelLength >= word.length() - i) {
+                return child;
+            }
+            // advance to next node
+            currentNode = child;
+            i += lenToMatch;
+        }
+
+        return NONE;
+    }
+
+    public int getLabelLength(int node) {
+        return labelLengths[node];
+    }
+
+    public char getLabelChar(int node, int index) {
+        return arena.charAt(labelOffsets[node] + index);
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public int getContributingAncestor(int node) {
+        return contributingAncestors == null ? parents[node] : contributingAncestors[node];
+    }
+
+    public int getSuffix(int node) {
+        return suffixes[node];
+    }
+
+    public int getSubstringLength(int node) {
+        return substringLengths[node];
+    }
+
+    public int[] getPostings(int node) {
+        return postings;
+    }
+
+    public IndexBitmap getPostingBitmap(int node) {
+        return null;
+    }
+
+    public int getPostingStart(int node) {
+        return postingStart[node];
+    }
+
+    public int getPostingEnd(int node) {
+        return postingStart[node + 1];
+    }
+
+    public int getPostingEnd(int node, int maximumLength) {
+        // the first posting of a document longer than maximumLength
+        int low = postingStart[node];
+        int high = postingStart[node + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (documentLengths[postings[mid]] <= maximumLength) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A view of the tree whose posting list for a node is built into a buffer when it is asked for
+     */
+    private abstract class BufferedView implements SuffixTreeView {
+
+        public int size() {
+            return substringLengths.length;
+        }
+
+        public int searchNode(String word) {
+            return FrozenTree.this.searchNode(word);
+        }
+
+        public int getChild(int node, char c) {
+            return FrozenTree.this.getChild(node, c);
+        }
+
+        public int getLabelLength(int node) {
+            return labelLengths[node];
+        }
+
+        public char getLabelChar(int node, int index) {
+            return arena.charAt(labelOffsets[node] + index);
+        }
+
+        public int getParent(int node) {
+            return parents[node];
+        }
+
+        public int getContributingAncestor(int node) {
+            return contributingAncestors == null ? parents[node] : contributingAncestors[node];
+        }
+
+        public int getSuffix(int node) {
+            return suffixes[node];
+        }
+
+        public int getSubstringLength(int node) {
+            return substringLengths[node];
+        }
+
+        public IndexBitmap getPostingBitmap(int node) {
+            return null;
+        }
+
+        public int getPostingStart(int node) {
+            return 0;
+        }
+    }
+
+    /**
+     * The view of the tree whose posting list for a node is listed into a buffer when it is asked for
+     */
+    private class ListingView extends BufferedView {
+
+        private final DocumentListing.Lister lister = listing.new Lister();
+        private int listedNode = NONE;
+        private int listedCount = 0;
+
+        private void list(int node) {
+            if (node != listedNode) {
+                listedCount = lister.list(node);
+                listedNode = node;
+            }
+        }
+
+        public int[] getPostings(int node) {
+            list(node);
+            return lister.getResults();
+        }
+
+        public int getPostingEnd(int node) {
+            list(node);
+            return listedCount;
+        }
+
+        public int getPostingEnd(int node, int maximumLength) {
+            return getPostingEnd(node);
+        }
+    }
+
+    /**
+     * The view of the tree whose posting list for a node is decoded into a buffer when it is asked for, only up to
+     * the documents short enough when a maximum length is given
+     */
+    private class DecodingView extends BufferedView {
+
+        private final CompressedPostings.Decoder decoder = compressed.new Decoder();
+        private int decodedNode = NONE;
+        private int decodedLength = 0;
+        private int decodedCount = 0;
+
+        private void decode(int node, int maximumLength) {
+            // the decoded postings are not sorted by document length, a shorter maximum length is decoded again
+            if (node != decodedNode || maximumLength != decodedLength) {
+                decodedCount = decoder.decode(node, maximumLength);
+                decodedNode = node;
+                decodedLength = maximumLength;
+            }
+        }
+
+        public int[] getPostings(int node) {
+            if (node != decodedNode) {
+                decode(node, Integer.MAX_VALUE);
+            }
+            return decoder.getResults();
+        }
+
+        public int getPostingEnd(int node) {
+            decode(node, Integer.MAX_VALUE);
+            return decodedCount;
+        }
+
+        public int getPostingEnd(int node, int maximumLength) {
+            decode(node, maximumLength);
+            return decodedCount;
+        }
+    }
+}
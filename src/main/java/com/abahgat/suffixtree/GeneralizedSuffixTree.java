@@ -22,6 +22,8 @@ package com.abahgat.suffixtree;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 
 /**
@@ -56,6 +58,11 @@ import java.util.*;
  * the labels of the edges starting from the last node of the path.
  * <p>
  * This kind of "implicit path" is important in the testAndSplit method.
+ * <p>
+ * Once its indices are populated, the tree can be queried by several threads at once. The first query after a put
+ * repairs the indices under the lock of the tree, which the concurrent queries wait for, but put itself must not
+ * run concurrently with any other call: a tree which is both updated and queried needs external locking, e.g. a
+ * read-write lock whose write lock is held by put.
  */
 public class GeneralizedSuffixTree implements Serializable {
 
@@ -71,11 +78,31 @@ public class GeneralizedSuffixTree implements Serializable {
     /**
      * The root of the suffix tree
      */
-    protected transient final Node root = new Node();
+    protected transient Node root = new Node();
+    /**
+     * The text of all the inserted documents, edge labels point into it
+     */
+    private transient final CharArena arena = new CharArena();
+    /**
+     * The offset in the arena of the key which is being added
+     */
+    private transient int keyOffset = 0;
     /**
      * The last leaf that was added during the update operation
      */
     private transient Node activeLeaf = root;
+    /**
+     * The node of the active point, as left by canonize and update
+     */
+    private transient Node activeNode = root;
+    /**
+     * The offset in the key being added where the string of the active point starts
+     */
+    private transient int activeStart = 0;
+    /**
+     * The node which is reached by the last call to testAndSplit
+     */
+    private transient Node testNode = root;
 
     /**
      * The node array which contains nodes in the suffix tree in the order of breadth-first traversal
@@ -83,254 +110,548 @@ public class GeneralizedSuffixTree implements Serializable {
     private ArrayList<Node> nodes = null;
 
     /**
-     * The flag which shows whether all indices are populated
+     * The flag which shows whether all indices are populated, read without the lock by the queries
+     */
+    private volatile boolean areIndicesPopulated = false;
+
+    /**
+     * The nodes whose index sets changed since the indices were populated, every ancestor of a dirty node is dirty too
+     */
+    private ArrayList<Node> dirtyNodes = new ArrayList<>();
+
+    /**
+     * The smallest index added since the indices were populated
+     */
+    private int dirtySince = Integer.MAX_VALUE;
+
+    /**
+     * The length of the document of each index, which the similarity of the documents is computed from
+     */
+    private int[] documentLengths = new int[16];
+
+    /**
+     * The lowest ratio the similarity queries can be run with, the index sets only keep the documents which can reach it
+     */
+    private float minimumRatio = 0;
+
+    /**
+     * The flat copy of the tree made by freeze, null as long as the tree is not frozen
+     */
+    private FrozenTree frozenTree = null;
+
+    /**
+     * The index which computes the index sets on demand, null unless populateIndicesLazily was called
+     */
+    private transient LazyIndex lazyIndex = null;
+
+    /**
+     * The interner which shares the index sets of the nodes, kept from populateIndices to freeze so that the
+     * repaired sets are shared with the ones already in the tree. Null when the indices are not populated eagerly.
      */
-    private boolean areIndicesPopulated = false;
+    private transient IndexSetInterner interner = null;
 
+    /**
+     * Whether the similarity queries jump from a node to its nearest ancestor with more postings, see
+     * setAncestorJumps
+     */
+    private boolean ancestorJumps = true;
+
+    /**
+     * The nearest ancestor of each node which has more postings than the node, as FrozenTree keeps it. It is
+     * computed by the first query which climbs the tree after the indices were populated, null until then, and
+     * repairIndices updates it for the nodes it repairs. It may be longer than the node array.
+     */
+    private transient volatile int[] contributingAncestors = null;
 
     /**
-     * A hash set which keeps the inserted documents as (index, document) pair
+     * The ways a frozen tree can store the index sets of its nodes
      */
-    private HashMap<Integer, String> documentSet = new HashMap<>();
+    public enum PostingFormat {
+        /**
+         * Every index set is copied as an array of ints, sorted by document length
+         */
+        ARRAY,
+        /**
+         * Every index set is delta-encoded with variable-length integers, the long ones in groups of geometric
+         * document lengths, which mostly takes one or two bytes per index instead of four, at the cost of decoding
+         * the set each time a query reads it
+         */
+        COMPRESSED,
+        /**
+         * The index sets are not stored, the documents of a node are listed from its depth-first range
+         *
+         * @see #freeze(boolean)
+         */
+        LISTING
+    }
 
     /**
-     * Searches for the given document within the GST and returns at most the given number of matches.
+     * Searches for the given document within the GST and returns the indexes of the documents which contain it.
      *
      * @param document the key to search for
      * @return the collection of indexes associated with the input <tt>document</tt>
      */
     public Collection<Integer> search(String document) {
+        if (frozenTree != null) {
+            if (minimumRatio > 0 && !frozenTree.listsDocuments()) {
+                throw new IllegalStateException("The posting lists of the frozen tree are cut at the minimum ratio, freeze(PostingFormat.LISTING) keeps search available.");
+            }
+            SuffixTreeView view = frozenTree.view();
+            int node = view.searchNode(document);
+            if (node == SuffixTreeView.NONE) {
+                return Collections.emptyList();
+            }
+            HashSet<Integer> results = new HashSet<Integer>();
+            int end = view.getPostingEnd(node);
+            int[] postings = view.getPostings(node);
+            for (int i = view.getPostingStart(node); i < end; i++) {
+                results.add(postings[i]);
+            }
+            return results;
+        }
+
         Node tmpNode = searchNode(document);
         if (tmpNode == null) {
-            return Collections.EMPTY_LIST;
+            return Collections.emptyList();
         }
         return tmpNode.fetchIndexSet();
     }
 
+    /**
+     * Searches for the given document within the GST like search, and passes the index of every document which
+     * contains it to <tt>visitor</tt>, once each and in no particular order, until the visitor returns false.
+     * A query which only needs some of the matches, or whether there is any, thus does not list all of them.
+     * <p>
+     * The index set of the node found is read when the indices are populated and up to date, otherwise the
+     * indexes of its subtree are visited breadth-first, which reaches the documents of its shallowest nodes first.
+     * An index set stored as a bitmap is visited from its bits, without decoding it first. The visitor may query
+     * this tree or another one, such a query runs on a scratch of its own.
+     *
+     * @param document the key to search for
+     * @param visitor  the callback which receives the indexes of the matches and returns whether to go on
+     * @return true if every match was visited, false if the visitor stopped the search
+     */
+    public boolean search(String document, IntPredicate visitor) {
+        if (frozenTree != null) {
+            if (minimumRatio > 0 && !frozenTree.listsDocuments()) {
+                throw new IllegalStateException("The posting lists of the frozen tree are cut at the minimum ratio, freeze(PostingFormat.LISTING) keeps search available.");
+            }
+            SuffixTreeView view = frozenTree.view();
+            int node = view.searchNode(document);
+            if (node == SuffixTreeView.NONE) {
+                return true;
+            }
+            int end = view.getPostingEnd(node);
+            int[] postings = view.getPostings(node);
+            for (int i = view.getPostingStart(node); i < end; i++) {
+                if (!visitor.test(postings[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Node tmpNode = searchNode(document);
+        if (tmpNode == null) {
+            return true;
+        }
+        if (areIndicesPopulated && lazyIndex == null && minimumRatio == 0) {
+            IndexBitmap bitmap = tmpNode.indexBitmap;
+            if (bitmap != null) {
+                return bitmap.forEach(visitor);
+            }
+            int[] indexSet = tmpNode.indexSet;
+            for (int index : indexSet) {
+                if (!visitor.test(index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the same index may be held by several nodes of the subtree
+        QueryScratch scratch = SCRATCH.get().available();
+        scratch.start(last, 0);
+        scratch.hold();
+        try {
+            ArrayList<Node> subtree = new ArrayList<Node>();
+            subtree.add(tmpNode);
+            for (int i = 0; i < subtree.size(); i++) {
+                Node node = subtree.get(i);
+                for (int index : node.getNodeData()) {
+                    if (scratch.record(index, 1) && !visitor.test(index)) {
+                        return false;
+                    }
+                }
+                for (Edge e : node.getEdges().values()) {
+                    subtree.add(e.getDest());
+                }
+            }
+            return true;
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Returns the number of documents which contain <tt>substring</tt>, i.e. search(substring).size().
+     * <p>
+     * When the indices are populated, or the tree is frozen, this is the size of the index set of the node found,
+     * so it takes the time of the search for the node and allocates nothing. The indices are repaired first if
+     * documents were added since they were populated, see repairIndices. Otherwise the distinct indexes of its
+     * subtree are counted.
+     *
+     * @param substring the string to count the documents of
+     * @return the number of documents which contain <tt>substring</tt>
+     * @throws IllegalStateException if the tree is frozen with the index sets cut at a minimum ratio, see search
+     */
+    public int countDocumentsContaining(String substring) {
+        if (frozenTree != null) {
+            if (minimumRatio > 0 && !frozenTree.listsDocuments()) {
+                throw new IllegalStateException("The posting lists of the frozen tree are cut at the minimum ratio, freeze(PostingFormat.LISTING) keeps search available.");
+            }
+            int node = frozenTree.searchNode(substring);
+            return node == SuffixTreeView.NONE ? 0 : frozenTree.countDocuments(node);
+        }
+
+        if (nodes != null) {
+            repairIndices();
+        }
+        Node tmpNode = searchNode(substring);
+        if (tmpNode == null) {
+            return 0;
+        }
+        if (areIndicesPopulated && minimumRatio == 0) {
+            return lazyIndex != null ? lazyIndex.getIndexSet(tmpNode).length : tmpNode.indexSize;
+        }
+
+        // the same index may be held by several nodes of the subtree
+        QueryScratch scratch = SCRATCH.get().available();
+        scratch.start(last, 0);
+        int count = 0;
+        ArrayList<Node> subtree = new ArrayList<Node>();
+        subtree.add(tmpNode);
+        for (int i = 0; i < subtree.size(); i++) {
+            Node node = subtree.get(i);
+            for (int index : node.getNodeData()) {
+                if (scratch.record(index, 1)) {
+                    count++;
+                }
+            }
+            for (Edge e : node.getEdges().values()) {
+                subtree.add(e.getDest());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of documents which contain each of <tt>substrings</tt>, e.g. the document frequencies of
+     * the n-grams of a text, like countDocumentsContaining(String).
+     *
+     * @param substrings the strings to count the documents of
+     * @return the number of documents which contain each string, in the order of <tt>substrings</tt>
+     * @throws IllegalStateException if the tree is frozen with the index sets cut at a minimum ratio, see search
+     */
+    public int[] countDocumentsContaining(List<String> substrings) {
+        int[] counts = new int[substrings.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = countDocumentsContaining(substrings.get(i));
+        }
+        return counts;
+    }
+
+    /**
+     * Searches for the given document within the GST like search, and returns the indexes of the documents which
+     * contain it sorted in an array instead of boxed in a collection.
+     * <p>
+     * The index set of the node found is copied when the indices are populated and up to date, otherwise the
+     * indexes of its subtree are gathered.
+     *
+     * @param document the key to search for
+     * @return the sorted indexes of the documents which contain <tt>document</tt>
+     */
+    public int[] searchIndexes(String document) {
+        if (frozenTree != null) {
+            if (minimumRatio > 0 && !frozenTree.listsDocuments()) {
+                throw new IllegalStateException("The posting lists of the frozen tree are cut at the minimum ratio, freeze(PostingFormat.LISTING) keeps search available.");
+            }
+            SuffixTreeView view = frozenTree.view();
+            int node = view.searchNode(document);
+            if (node == SuffixTreeView.NONE) {
+                return new int[0];
+            }
+            int end = view.getPostingEnd(node);
+            int[] results = Arrays.copyOfRange(view.getPostings(node), view.getPostingStart(node), end);
+            Arrays.sort(results);
+            return results;
+        }
+
+        Node tmpNode = searchNode(document);
+        if (tmpNode == null) {
+            return new int[0];
+        }
+        if (areIndicesPopulated && lazyIndex == null && minimumRatio == 0) {
+            // a bitmap decodes into a fresh array, only the interned sets are shared
+            IndexBitmap bitmap = tmpNode.indexBitmap;
+            return bitmap != null ? bitmap.toArray() : tmpNode.indexSet.clone();
+        }
+        return tmpNode.fetchIndexArray();
+    }
+
     /**
      * Adds the specified <tt>index</tt> to the GST under the given <tt>key</tt>.
      * <p>
      * Entries must be inserted so that their indexes are in non-decreasing order,
      * otherwise an IllegalStateException will be raised.
+     * <p>
+     * The construction works on offsets into <tt>key</tt>: the active point is kept as
+     * (activeNode, key[activeStart, i)) and no intermediate string is built while the
+     * tree is walked, canonize follows edges by comparing label lengths only.
      *
      * @param key   the string key that will be added to the index
      * @param index the value that will be added to the index
-     * @throws IllegalStateException if an invalid index is passed as input
+     * @throws IllegalStateException if an invalid index is passed as input or the tree is frozen
      */
     public void put(String key, int index) throws IllegalStateException {
-        if (index < last) {
-            throw new IllegalStateException("The input index must not be less than any of the previously inserted ones. Got " + index + ", expected at least " + last);
-        } else {
-            last = index;
-        }
-
-        documentSet.put(index, key);
-
-        //Reset indices flag
-        areIndicesPopulated = false;
+        keyOffset = addDocument(key, index);
 
         // reset activeLeaf
         activeLeaf = root;
 
-        String remainder = key;
-        Node s = root;
+        // the active point is (activeNode, key[activeStart, i))
+        activeNode = root;
+        activeStart = 0;
 
         // proceed with tree construction (closely related to procedure in
         // Ukkonen's paper)
-        String text = "";
         // iterate over the string, one char at a time
-        for (int i = 0; i < remainder.length(); i++) {
-            // line 6
-            text += remainder.charAt(i);
-            // use intern to make sure the resulting string is in the pool.
-            text = text.intern();
-
+        for (int i = 0; i < key.length(); i++) {
             // line 7: update the tree with the new transitions due to this new char
-            Pair<Node, String> active = update(s, text, remainder.substring(i), index, key.length());
+            update(key, i, index);
             // line 8: make sure the active pair is canonical
-            active = canonize(active.getFirst(), active.getSecond());
+            canonize(activeNode, key, activeStart, i + 1);
+        }
+
+        // the suffixes which are still implicit must be made explicit to hold the index
+        addImplicitSuffixes(key, index);
+    }
 
-            s = active.getFirst();
-            text = active.getSecond();
+    /**
+     * Builds a GST out of the given documents at once, the index of each document is its position in the list.
+     * <p>
+     * The tree is built from the generalized suffix array of the documents instead of inserting them one by one,
+     * and its indices are populated before it is returned. The result is the same as calling put for every
+     * document in order and then populateIndices.
+     *
+     * @param documents the documents to add to the index
+     * @return the GST of the documents, ready to be queried
+     */
+    public static GeneralizedSuffixTree bulkLoad(List<String> documents) {
+        return bulkLoad(documents, 1);
+    }
+
+    /**
+     * Builds a GST out of the given documents at once like bulkLoad(documents), using up to
+     * <tt>parallelism</tt> threads.
+     * <p>
+     * The suffixes are partitioned by their first character and the subtree of the root for each
+     * character is built, and has its suffix links set, on a separate fork-join task.
+     * The indices are then populated with populateIndices(parallelism).
+     * The resulting tree is the same as the one built sequentially.
+     *
+     * @param documents   the documents to add to the index
+     * @param parallelism the number of threads to build the tree with
+     * @return the GST of the documents, ready to be queried
+     * @throws IllegalArgumentException if <tt>parallelism</tt> is not positive
+     */
+    public static GeneralizedSuffixTree bulkLoad(List<String> documents, int parallelism) {
+        return bulkLoad(documents, parallelism, 0);
+    }
+
+    /**
+     * Builds a GST out of the given documents at once like bulkLoad(documents, parallelism), whose index sets
+     * only keep the documents which can be similar above <tt>minimumRatio</tt>.
+     *
+     * @param documents    the documents to add to the index
+     * @param parallelism  the number of threads to build the tree with
+     * @param minimumRatio the lowest ratio the similarity queries will be run with
+     * @return the GST of the documents, ready to be queried
+     * @throws IllegalArgumentException if <tt>parallelism</tt> is not positive or <tt>minimumRatio</tt> is not in [0, 1)
+     * @see #setMinimumRatio(float)
+     */
+    public static GeneralizedSuffixTree bulkLoad(List<String> documents, int parallelism, float minimumRatio) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive. Got " + parallelism);
+        }
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        tree.setMinimumRatio(minimumRatio);
+        new BulkLoader(tree, documents, parallelism).load();
+        tree.populateIndices(parallelism);
+        return tree;
+    }
+
+    /**
+     * Registers the given document under <tt>index</tt> and appends its text to the arena.
+     *
+     * @return the offset of the document in the arena
+     * @throws IllegalStateException if an invalid index is passed as input
+     */
+    int addDocument(String key, int index) throws IllegalStateException {
+        if (frozenTree != null) {
+            throw new IllegalStateException("The tree is frozen, no document can be added to it.");
+        }
+        if (index < last) {
+            throw new IllegalStateException("The input index must not be less than any of the previously inserted ones. Got " + index + ", expected at least " + last);
+        } else {
+            last = index;
         }
 
-        // add leaf suffix link, is necessary
-        if (null == activeLeaf.getSuffix() && activeLeaf != root && activeLeaf != s) {
-            activeLeaf.setSuffix(s);
+        if (index >= documentLengths.length) {
+            documentLengths = Arrays.copyOf(documentLengths, Math.max(index + 1, documentLengths.length * 2));
         }
+        documentLengths[index] = key.length();
+
+        //Reset indices flag
+        areIndicesPopulated = false;
+        dirtySince = Math.min(dirtySince, index);
 
+        return arena.append(key);
     }
 
     /**
-     * Tests whether the string stringPart + t is contained in the subtree that has inputs as root.
+     * Tests whether the string key[start, end) + key[end] is contained in the subtree that has inputs as root.
      * If that's not the case, and there exists a path of edges e1, e2, ... such that
-     * e1.label + e2.label + ... + $end = stringPart
+     * e1.label + e2.label + ... + $end = key[start, end)
      * and there is an edge g such that
-     * g.label = stringPart + rest
+     * g.label = key[start, end) + rest
      * <p>
      * Then g will be split in two different edges, one having $end as label, and the other one
      * having rest as label.
+     * <p>
+     * The last node that can be reached by following the path denoted by key[start, end)
+     * starting from inputs is stored in <tt>testNode</tt>.
      *
-     * @param inputs     the starting node
-     * @param stringPart the string to search
-     * @param t          the following character
-     * @param remainder  the remainder of the string to add to the index
-     * @param value      the value to add to the index
-     * @return a pair containing
-     * true/false depending on whether (stringPart + t) is contained in the subtree starting in inputs
-     * the last node that can be reached by following the path denoted by stringPart starting from inputs
-     */
-    private Pair<Boolean, Node> testAndSplit(final Node inputs, final String stringPart, final char t, final String remainder, final int value, final int textLength) {
+     * @param inputs the starting node
+     * @param key    the key which is being added to the index
+     * @param start  the start offset of the string to search
+     * @param end    the end offset of the string to search, key[end] is the following character
+     * @return true/false depending on whether (key[start, end) + key[end]) is contained in the subtree starting in inputs
+     */
+    private boolean testAndSplit(final Node inputs, final String key, final int start, final int end) {
+        char t = key.charAt(end);
+
         // descend the tree as far as possible
-        Pair<Node, String> ret = canonize(inputs, stringPart);
-        Node s = ret.getFirst();
-        String str = ret.getSecond();
+        canonize(inputs, key, start, end);
+        Node s = activeNode;
+        int k = activeStart;
 
-        if (!"".equals(str)) {
-            Edge g = s.getEdge(str.charAt(0));
+        if (k < end) {
+            Edge g = s.getEdge(key.charAt(k));
 
-            String label = g.getLabel();
-            // must see whether "str" is substring of the label of an edge
-            if (label.length() > str.length() && label.charAt(str.length()) == t) {
-                return new Pair<Boolean, Node>(true, s);
+            // must see whether key[k, end) is a prefix of the label of an edge
+            if (g.getLabelChar(end - k) == t) {
+                testNode = s;
+                return true;
             } else {
                 // need to split the edge
-                String newlabel = label.substring(str.length());
-                assert (label.startsWith(str));
-
-                // build a new node
-                Node r = new Node();
-                // build a new edge
-                Edge newedge = new Edge(str, r, s);
-                r.setSourceEdge(newedge);
-
-                g.setLabel(newlabel);
-                g.setSource(r);
-
-                r.increaseSubStringLength(s.getSubstringLength() + str.length());
-                // link s -> r
-                r.addEdge(newlabel.charAt(0), g);
-                s.addEdge(str.charAt(0), newedge);
-
-
-                return new Pair<Boolean, Node>(false, r);
+                testNode = splitEdge(s, g, end - k);
+                return false;
             }
-
         } else {
-            Edge e = s.getEdge(t);
-            if (null == e) {
-                // if there is no t-transtion from s
-                return new Pair<Boolean, Node>(false, s);
-            } else {
-                if (remainder.equals(e.getLabel())) {
-                    // update payload of destination node
-                    e.getDest().addRef(value);
-                    return new Pair<Boolean, Node>(true, s);
-                } else if (remainder.startsWith(e.getLabel())) {
-                    return new Pair<Boolean, Node>(true, s);
-                } else if (e.getLabel().startsWith(remainder)) {
-                    // need to split as above
-                    Node newNode = new Node();
-
-                    newNode.addRef(value);
-                    newNode.increaseSubStringLength(s.getSubstringLength() + remainder.length());
-
-
-                    Edge newEdge = new Edge(remainder, newNode, s);
-                    newNode.setSourceEdge(newEdge);
+            testNode = s;
+            return null != s.getEdge(t);
+        }
+    }
 
+    /**
+     * Splits the edge <tt>g</tt> which starts from <tt>s</tt> after the first <tt>length</tt> characters
+     * of its label and returns the node which is inserted in between.
+     */
+    private Node splitEdge(final Node s, final Edge g, final int length) {
+        char firstChar = g.getLabelChar(0);
 
-                    e.setLabel(e.getLabel().substring(remainder.length()));
-                    newNode.addEdge(e.getLabel().charAt(0), e);
-                    e.setSource(newNode);
+        // build a new node
+        Node r = new Node();
+        // build a new edge, it shares the first part of the label of g
+        Edge newedge = new Edge(arena, g.getLabelOffset(), length, r, s);
+        r.setSourceEdge(newedge);
 
-                    s.addEdge(t, newEdge);
+        g.setLabel(g.getLabelOffset() + length, g.getLabelLength() - length);
+        g.setSource(r);
 
-                    return new Pair<Boolean, Node>(false, s);
-                } else {
-                    // they are different words. No prefix. but they may still share some common substr
-                    return new Pair<Boolean, Node>(true, s);
-                }
-            }
-        }
+        r.increaseSubStringLength(s.getSubstringLength() + length);
+        // link s -> r
+        r.addEdge(g.getLabelChar(0), g);
+        s.addEdge(firstChar, newedge);
 
+        return r;
     }
 
     /**
-     * Return a (Node, String) (n, remainder) pair such that n is a farthest descendant of
-     * s (the input node) that can be reached by following a path of edges denoting
-     * a prefix of inputstr and remainder will be string that must be
-     * appended to the concatenation of labels from s to n to get inpustr.
+     * Stores a (Node, offset) (n, k) pair in (<tt>activeNode</tt>, <tt>activeStart</tt>) such that n is
+     * a farthest descendant of s (the input node) that can be reached by following a path of edges
+     * denoting a prefix of key[start, end) and key[k, end) is the string that must be
+     * appended to the concatenation of labels from s to n to get key[start, end).
+     * <p>
+     * key[start, end) is always contained in the tree, so the path is followed by comparing
+     * only the label lengths.
      */
-    private Pair<Node, String> canonize(final Node s, final String inputstr) {
-
-        if ("".equals(inputstr)) {
-            return new Pair<Node, String>(s, inputstr);
-        } else {
-            Node currentNode = s;
-            String str = inputstr;
-            Edge g = s.getEdge(str.charAt(0));
-            // descend the tree as long as a proper label is found
-            while (g != null && str.startsWith(g.getLabel())) {
-                str = str.substring(g.getLabel().length());
-                currentNode = g.getDest();
-                if (str.length() > 0) {
-                    g = currentNode.getEdge(str.charAt(0));
-                }
+    private void canonize(final Node s, final String key, final int start, final int end) {
+        Node currentNode = s;
+        int k = start;
+        // descend the tree as long as a proper label is found
+        while (k < end) {
+            Edge g = currentNode.getEdge(key.charAt(k));
+            int labelLength = g.getLabelLength();
+            if (labelLength > end - k) {
+                break;
             }
-
-            return new Pair<Node, String>(currentNode, str);
+            k += labelLength;
+            currentNode = g.getDest();
         }
+
+        activeNode = currentNode;
+        activeStart = k;
     }
 
     /**
-     * Updates the tree starting from inputNode and by adding stringPart.
+     * Updates the tree starting from the active point by adding key[i].
      * <p>
-     * Returns a reference (Node, String) pair for the string that has been added so far.
+     * Leaves the active point (activeNode, key[activeStart, i + 1)) at the string that has been added so far.
      * This means:
      * - the Node will be the Node that can be reached by the longest path string (S1)
      * that can be obtained by concatenating consecutive edges in the tree and
      * that is a substring of the string added so far to the tree.
-     * - the String will be the remainder that must be added to S1 to get the string
+     * - the offset will denote the remainder that must be added to S1 to get the string
      * added so far.
      *
-     * @param inputNode  the node to start from
-     * @param stringPart the string to add to the tree
-     * @param rest       the rest of the string
-     * @param value      the value to add to the index
+     * @param key   the key which is being added to the index
+     * @param i     the offset of the new character
+     * @param value the value to add to the index
      */
-    private Pair<Node, String> update(final Node inputNode, final String stringPart, final String rest, final int value, final int textLength) {
-        Node s = inputNode;
-        String tempstr = stringPart;
-        char newChar = stringPart.charAt(stringPart.length() - 1);
+    private void update(final String key, final int i, final int value) {
+        Node s = activeNode;
+        int k = activeStart;
+        char newChar = key.charAt(i);
 
         // line 1
         Node oldroot = root;
 
         // line 1b
-        Pair<Boolean, Node> ret = testAndSplit(s, tempstr.substring(0, tempstr.length() - 1), newChar, rest, value, textLength);
-
-        Node r = ret.getSecond();
-        boolean endpoint = ret.getFirst();
+        boolean endpoint = testAndSplit(s, key, k, i);
+        Node r = testNode;
 
-        Node leaf;
         // line 2
         while (!endpoint) {
-            // line 3
-            Edge tempEdge = r.getEdge(newChar);
-            if (null != tempEdge) {
-                // such a node is already present. This is one of the main differences from Ukkonen's case:
-                // the tree can contain deeper nodes at this stage because different strings were added by previous iterations.
-                leaf = tempEdge.getDest();
-            } else {
-                // must build a new leaf
-                leaf = new Node();
-                leaf.addRef(value);
-                leaf.increaseSubStringLength(r.getSubstringLength() + rest.length());
-                Edge newedge = new Edge(rest, leaf, r);
-                leaf.setSourceEdge(newedge);
-                r.addEdge(newChar, newedge);
-            }
+            // line 3: build a new leaf
+            Node leaf = new Node();
+            leaf.addRef(value);
+            leaf.increaseSubStringLength(r.getSubstringLength() + key.length() - i);
+            Edge newedge = new Edge(arena, keyOffset + i, key.length() - i, leaf, r);
+            leaf.setSourceEdge(newedge);
+            r.addEdge(newChar, newedge);
+            markDirty(leaf);
 
             // update suffix link for newly created leaf
             if (activeLeaf != root) {
@@ -350,45 +671,111 @@ public class GeneralizedSuffixTree implements Serializable {
             if (null == s.getSuffix()) { // root node
                 assert (root == s);
                 // this is a special case to handle what is referred to as node _|_ on the paper
-                tempstr = tempstr.substring(1);
+                k++;
             } else {
-                Pair<Node, String> canret = canonize(s.getSuffix(), safeCutLastChar(tempstr));
-                s = canret.getFirst();
-                // use intern to ensure that tempstr is a reference from the string pool
-                tempstr = (canret.getSecond() + tempstr.charAt(tempstr.length() - 1)).intern();
+                canonize(s.getSuffix(), key, k, i);
+                s = activeNode;
+                k = activeStart;
             }
 
             // line 7
-            ret = testAndSplit(s, safeCutLastChar(tempstr), newChar, rest, value, textLength);
-            r = ret.getSecond();
-            endpoint = ret.getFirst();
-
+            if (k > i) {
+                // the empty string, _|_ has a transition for every character
+                endpoint = true;
+                r = root;
+            } else {
+                endpoint = testAndSplit(s, key, k, i);
+                r = testNode;
+            }
         }
 
         // line 8
         if (oldroot != root) {
             oldroot.setSuffix(r);
         }
-        oldroot = root;
 
-        return new Pair<Node, String>(s, tempstr);
+        activeNode = s;
+        activeStart = k;
     }
 
-    Node getRoot() {
-        return root;
+    /**
+     * Adds <tt>value</tt> to the suffixes of <tt>key</tt> which are only implicitly contained in the tree
+     * once the whole key has been processed, i.e. starting from the active point key[activeStart, n).
+     * The suffixes that end in the middle of an edge are split into nodes of their own,
+     * and every such node is linked to the node of its next suffix.
+     *
+     * @param key   the key which has been added to the index
+     * @param value the value to add to the index
+     */
+    private void addImplicitSuffixes(final String key, final int value) {
+        Node s = activeNode;
+        int k = activeStart;
+        int n = key.length();
+        Node previous = activeLeaf;
+
+        while (true) {
+            canonize(s, key, k, n);
+            s = activeNode;
+            k = activeStart;
+
+            Node r = k < n ? splitEdge(s, s.getEdge(key.charAt(k)), n - k) : s;
+            if (r == root) {
+                break;
+            }
+
+            r.addRef(value);
+            markDirty(r);
+            if (previous != root) {
+                previous.setSuffix(r);
+            }
+            previous = r;
+
+            if (s == root) {
+                k++;
+            } else {
+                s = s.getSuffix();
+            }
+        }
+
+        if (previous != root) {
+            previous.setSuffix(root);
+        }
+        activeLeaf = root;
+        activeNode = root;
     }
 
-    private String safeCutLastChar(String seq) {
-        if (seq.length() == 0) {
-            return "";
+    /**
+     * Marks <tt>node</tt>, which holds a suffix of the key being added, and its ancestors as dirty.
+     * The nodes whose index sets change are exactly the ancestors of such nodes. Nothing is marked
+     * as long as the indices were never populated, since they will be populated from scratch.
+     */
+    private void markDirty(Node node) {
+        if (nodes == null) {
+            return;
+        }
+        while (node != null && !node.dirty) {
+            node.dirty = true;
+            dirtyNodes.add(node);
+            node = node.getSourceNode();
         }
-        return seq.substring(0, seq.length() - 1);
     }
 
+    Node getRoot() {
+        return root;
+    }
+
+    CharArena getArena() {
+        return arena;
+    }
     /**
      * Returns the tree node (if present) that corresponds to the given string.
+     *
+     * @throws IllegalStateException if the tree is frozen, as freeze releases its nodes
      */
     public Node searchNode(String word) {
+        if (frozenTree != null) {
+            throw new IllegalStateException("The tree is frozen, its nodes can not be accessed. Use search instead.");
+        }
         /*
          * Verifies if exists a path from the root to a node such that the concatenation
          * of all the labels on the path is a superstring of the given word.
@@ -405,14 +792,14 @@ public class GeneralizedSuffixTree implements Serializable {
                 // there is no edge starting with this char
                 return null;
             } else {
-                String label = currentEdge.getLabel();
-                int lenToMatch = Math.min(word.length() - i, label.length());
-                if (!word.regionMatches(i, label, 0, lenToMatch)) {
+                int labelLength = currentEdge.getLabelLength();
+                int lenToMatch = Math.min(word.length() - i, labelLength);
+                if (!arena.regionMatches(currentEdge.getLabelOffset(), word, i, lenToMatch)) {
                     // the label on the edge does not correspond to the one in the string to search
                     return null;
                 }
 
-                if (label.length() >= word.length() - i) {
+                if (labelLength >= word.length() - i) {
                     return currentEdge.getDest();
                 } else {
                     // advance to next node
@@ -431,74 +818,798 @@ public class GeneralizedSuffixTree implements Serializable {
     /**
      * Returns documents which are similar to <tt>targetDocument</tt> above the threshold <tt>ratio</tt>
      * The similarity between two documents are defined as: 2*lcSubstring(s1,s2) / (|s1| + |s2|)
+     * <p>
+     * The target does not need to be in the tree. Its matching statistics give, for every offset j, the longest
+     * prefix of targetDocument[j, m) which occurs in the tree: the documents under the node at or below the end
+     * of that match share the whole match with the target, and the ones under its ancestors share the string of
+     * the ancestor.
      *
      * @param targetDocument The source targetDocument
      * @param ratio          The ratio for similarity.
      * @return Ids of tweets who ar similar according to the threshold
+     * @throws IllegalArgumentException if <tt>ratio</tt> is below the minimum ratio
      * @throws IllegalStateException if populateIndices are not called beforehand
+     * @see #getSimilarDocuments(String, float)
+     * @see #repairIndices()
      */
     public HashSet<Integer> getSimilarStringIndexes(String targetDocument, float ratio) {
-
-        if (!areIndicesPopulated) {
-            throw new IllegalStateException("You should populate indices before using this function. See readme for a sample example");
-        }
-
         HashSet<Integer> nearestStringIndexes = new HashSet<Integer>();
-        int minimumLength = (int) (targetDocument.length() * ratio / 2);
-        Node node = searchNode(targetDocument);
-
-        Node suffixNode = node;
-        while (suffixNode != null && suffixNode.getSubstringLength() > minimumLength) {
-            Node ancestorNode = suffixNode;
-            Node toBeAdded;
-            while (ancestorNode != null && ancestorNode.getSubstringLength() > minimumLength) {
-                toBeAdded = ancestorNode;
-                ancestorNode = ancestorNode.getSourceNode();
-
-                int lcSubstring = toBeAdded.getSubstringLength();
-                for (Integer id : toBeAdded.indexSet) {
-                    float similarity = (float) 2 * lcSubstring / (targetDocument.length() + documentSet.get(id).length());
-                    if (similarity > ratio) {
-                        nearestStringIndexes.add(id);
-                    }
-                }
-            }
-            suffixNode = suffixNode.getSuffix();
-        }
-
+        forEachSimilarStringIndex(targetDocument, ratio, nearestStringIndexes::add);
         return nearestStringIndexes;
     }
 
     /**
-     * In the abahgat's suffix tree implementation, each node represents a substring
-     * and a leaf contains the id of strings which contain the substrings represented by the leaf.
-     * This function agglomerates and stores indices from leaves to root
+     * Returns the indexes of the documents which are similar to <tt>targetDocument</tt> above the threshold
+     * <tt>ratio</tt> like getSimilarStringIndexes, sorted in an array instead of boxed in a set.
+     *
+     * @param targetDocument the document to find similar documents to, it does not need to be in the tree
+     * @param ratio          the ratio for similarity
+     * @return the sorted indexes of the similar documents
+     * @throws IllegalArgumentException if <tt>ratio</tt> is below the minimum ratio
+     * @throws IllegalStateException if populateIndices are not called beforehand
      */
-    public void populateIndices() {
-        createNodeArray();
-        for (int i = nodes.size() - 1; i >= 0; i--) {
-            Node node = nodes.get(i);
-            HashSet<Integer> ret = new HashSet<Integer>();
-            for (int num : node.getNodeData()) {
-                ret.add(num);
+    public int[] getSimilarStringIndexArray(String targetDocument, float ratio) {
+        QueryScratch scratch = collectCommonSubstrings(targetDocument, ratio);
+
+        int[] nearestStringIndexes = new int[scratch.size()];
+        int size = 0;
+        for (int i = 0; i < scratch.size(); i++) {
+            int id = scratch.getDocument(i);
+            if (similarity(targetDocument, id, scratch.getLength(id)) > ratio) {
+                nearestStringIndexes[size++] = id;
             }
+        }
+        Arrays.sort(nearestStringIndexes, 0, size);
+        return size < nearestStringIndexes.length ? Arrays.copyOf(nearestStringIndexes, size) : nearestStringIndexes;
+    }
 
-            for (Edge e : node.getEdges().values()) {
-                for (int num : e.getDest().getIndexSet()) {
-                    ret.add(num);
+    /**
+     * Passes to <tt>visitor</tt> the index of every document which is similar to <tt>targetDocument</tt> above
+     * the threshold <tt>ratio</tt> like getSimilarStringIndexes, once each and in no particular order, as soon as
+     * the walk over the tree finds it, and stops as soon as the visitor returns false. A query which only needs
+     * some of the similar documents, or whether there is any, thus returns without walking the whole tree.
+     * The visitor may query this tree or another one, such a query runs on a scratch of its own.
+     *
+     * @param targetDocument the document to find similar documents to, it does not need to be in the tree
+     * @param ratio          the ratio for similarity
+     * @param visitor        the callback which receives the indexes of the similar documents and returns whether
+     *                       to go on
+     * @return true if every similar document was visited, false if the visitor stopped the query
+     * @throws IllegalArgumentException if <tt>ratio</tt> is below the minimum ratio
+     * @throws IllegalStateException if populateIndices are not called beforehand
+     */
+    public boolean getSimilarStringIndexes(String targetDocument, float ratio, IntPredicate visitor) {
+        return collectCommonSubstrings(targetDocument, ratio, new SimilarityVisitor(targetDocument, ratio, visitor)) != null;
+    }
+
+    /**
+     * Passes to <tt>consumer</tt> the index of every document which is similar to <tt>targetDocument</tt> above
+     * the threshold <tt>ratio</tt> like getSimilarStringIndexes, once each and in no particular order, without
+     * collecting them. The consumer may query this tree or another one, such a query runs on a scratch of its own.
+     *
+     * @param targetDocument the document to find similar documents to, it does not need to be in the tree
+     * @param ratio          the ratio for similarity
+     * @param consumer       the callback which receives the indexes of the similar documents
+     * @throws IllegalArgumentException if <tt>ratio</tt> is below the minimum ratio
+     * @throws IllegalStateException if populateIndices are not called beforehand
+     */
+    public void forEachSimilarStringIndex(String targetDocument, float ratio, IntConsumer consumer) {
+        QueryScratch scratch = collectCommonSubstrings(targetDocument, ratio);
+
+        scratch.hold();
+        try {
+            for (int i = 0; i < scratch.size(); i++) {
+                int id = scratch.getDocument(i);
+                if (similarity(targetDocument, id, scratch.getLength(id)) > ratio) {
+                    consumer.accept(id);
                 }
             }
+        } finally {
+            scratch.release();
+        }
+    }
 
-            int totalCount = ret.size();
-            node.indexSize = totalCount;
-            node.indexSet = new int[totalCount];
-            int index = 0;
-            for (int num : ret) {
-                node.indexSet[index++] = num;
+    /**
+     * Returns the documents which are similar to <tt>targetDocument</tt> above the threshold <tt>ratio</tt> like
+     * getSimilarStringIndexes, along with their exact similarity, in no particular order.
+     * <p>
+     * Every posting met by the walk only updates the longest common substring of its document in a scratch array
+     * indexed by document, which is reused from one query to the next, so each document is scored once.
+     *
+     * @param targetDocument the document to find similar documents to, it does not need to be in the tree
+     * @param ratio          the ratio for similarity
+     * @return the similar documents with their similarity
+     * @throws IllegalArgumentException if <tt>ratio</tt> is below the minimum ratio
+     * @throws IllegalStateException if populateIndices are not called beforehand
+     */
+    public List<SimilarDocument> getSimilarDocuments(String targetDocument, float ratio) {
+        QueryScratch scratch = collectCommonSubstrings(targetDocument, ratio);
+
+        List<SimilarDocument> similarDocuments = new ArrayList<SimilarDocument>();
+        for (int i = 0; i < scratch.size(); i++) {
+            int id = scratch.getDocument(i);
+            float similarity = similarity(targetDocument, id, scratch.getLength(id));
+            if (similarity > ratio) {
+                similarDocuments.add(new SimilarDocument(id, similarity));
             }
         }
-
-        areIndicesPopulated = true;
+        return similarDocuments;
+    }
+
+    /**
+     * Records in the scratch of the current thread the longest common substring of <tt>targetDocument</tt> with
+     * every document which may be similar to it above <tt>ratio</tt>, i.e. which shares a substring longer than
+     * m * ratio / 2 with it.
+     * <p>
+     * The ancestors of the matches of consecutive offsets are mostly the same, so the nodes are marked as visited
+     * in the scratch: the climb from a match stops at a node which was already visited with a common substring
+     * at least as long, as its ancestors have been recorded since, and the postings of a node are scanned
+     * again only when it is reached with a longer one. The climb also jumps over the ancestors which have the same
+     * postings as the node below them, so only the nodes which bring new documents are visited.
+     */
+    private QueryScratch collectCommonSubstrings(String targetDocument, float ratio) {
+        return collectCommonSubstrings(targetDocument, ratio, null);
+    }
+
+    /**
+     * Records the longest common substrings like collectCommonSubstrings(String, float), passing every document
+     * to <tt>visitor</tt> as soon as a common substring makes it similar enough, unless the visitor is null.
+     *
+     * @return the scratch, null if the visitor stopped the walk
+     */
+    private QueryScratch collectCommonSubstrings(String targetDocument, float ratio, SimilarityVisitor visitor) {
+        if (ratio < minimumRatio) {
+            throw new IllegalArgumentException("The ratio must not be below the minimum ratio " + minimumRatio + ". Got " + ratio);
+        }
+        repairIndices();
+
+        SuffixTreeView view = getView();
+        int length = targetDocument.length();
+        int minimumLength = (int) (length * ratio / 2);
+
+        int[] matchNodes = new int[length];
+        int[] matchLengths = new int[length];
+        matchingStatistics(view, targetDocument, matchNodes, matchLengths);
+
+        QueryScratch scratch = SCRATCH.get().available();
+        scratch.start(last, view.size());
+        if (visitor != null) {
+            // the visitor runs in the middle of the walk
+            scratch.hold();
+        }
+        try {
+            for (int j = 0; j < length; j++) {
+                int node = matchNodes[j];
+                int lcSubstring = matchLengths[j];
+                while (node != SuffixTreeView.NONE && lcSubstring > minimumLength) {
+                    int visited = scratch.visit(node, lcSubstring);
+                    if (visited >= lcSubstring) {
+                        break;
+                    }
+                    int maximumLength = maximumLength(length, lcSubstring, ratio);
+                    if (visitor == null) {
+                        record(view, node, lcSubstring, maximumLength, scratch);
+                    } else if (!visitor.record(view, node, lcSubstring, maximumLength, scratch)) {
+                        return null;
+                    }
+                    if (visited != -1) {
+                        // the ancestors were recorded when the node was first visited
+                        break;
+                    }
+                    node = view.getContributingAncestor(node);
+                    if (node != SuffixTreeView.NONE) {
+                        lcSubstring = view.getSubstringLength(node);
+                    }
+                }
+            }
+        } finally {
+            scratch.release();
+            scratch.releaseNodes();
+        }
+        return scratch;
+    }
+
+    /**
+     * Records a common substring of length <tt>lcSubstring</tt> with the documents of <tt>node</tt>, skipping those
+     * which are known to be longer than <tt>maximumLength</tt> when the postings are sorted by document length
+     */
+    private static void record(SuffixTreeView view, int node, int lcSubstring, int maximumLength, QueryScratch scratch) {
+        IndexBitmap bitmap = view.getPostingBitmap(node);
+        if (bitmap != null) {
+            bitmap.record(lcSubstring, scratch);
+            return;
+        }
+        int end = view.getPostingEnd(node, maximumLength);
+        int[] postings = view.getPostings(node);
+        for (int i = view.getPostingStart(node); i < end; i++) {
+            scratch.record(postings[i], lcSubstring);
+        }
+    }
+
+    /**
+     * Passes the documents of a similarity query to an IntPredicate as soon as they are known to be similar enough,
+     * i.e. when the first common substring which makes them so is recorded.
+     */
+    private class SimilarityVisitor {
+
+        private final String targetDocument;
+        private final float ratio;
+        private final IntPredicate visitor;
+
+        SimilarityVisitor(String targetDocument, float ratio, IntPredicate visitor) {
+            this.targetDocument = targetDocument;
+            this.ratio = ratio;
+            this.visitor = visitor;
+        }
+
+        /**
+         * Records a common substring like GeneralizedSuffixTree.record and visits the documents it makes similar.
+         *
+         * @return false if the visitor stopped the walk
+         */
+        boolean record(SuffixTreeView view, int node, int lcSubstring, int maximumLength, QueryScratch scratch) {
+            int end = view.getPostingEnd(node, maximumLength);
+            int[] postings = view.getPostings(node);
+            for (int i = view.getPostingStart(node); i < end; i++) {
+                int id = postings[i];
+                int previous = scratch.getRecordedLength(id);
+                scratch.record(id, lcSubstring);
+                if (lcSubstring > previous && similarity(targetDocument, id, lcSubstring) > ratio
+                        && !(previous > 0 && similarity(targetDocument, id, previous) > ratio)) {
+                    if (!visitor.test(id)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns a bound on the length of the documents which may be similar above <tt>ratio</tt> to a target of length
+     * <tt>targetLength</tt> thanks to a common substring of length <tt>lcSubstring</tt>.
+     * <p>
+     * 2 * L / (m + |d|) &gt; ratio requires |d| &lt; 2 * L / ratio - m, and the bound is rounded up so that the exact
+     * check on the similarity is left to the caller.
+     */
+    private static int maximumLength(int targetLength, int lcSubstring, float ratio) {
+        if (ratio <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.floor(2.0 * lcSubstring / ratio - targetLength) + 1);
+    }
+
+    /**
+     * Returns the similarity of <tt>targetDocument</tt> with the document <tt>id</tt>, given the length of their
+     * longest common substring
+     */
+    private float similarity(String targetDocument, int id, int lcSubstring) {
+        return (float) 2 * lcSubstring / (targetDocument.length() + documentLengths[id]);
+    }
+
+    /**
+     * Returns the <tt>k</tt> documents which are the most similar to <tt>targetDocument</tt>, the most similar first,
+     * along with their similarity. Ties are broken in favour of the smaller index, and documents which have no
+     * char in common with the target are not returned.
+     * <p>
+     * The nodes are visited from the longest common substring with the target down, by bucketing them on that
+     * length, so a document is first reached with its longest common substring and its exact similarity.
+     * A document which has a common substring of length L is at least L long, so its similarity is at most
+     * 2*L / (m + L): the walk stops as soon as that bound falls below the k-th best similarity found so far.
+     * <p>
+     * With a minimum ratio, only the documents similar above it are returned. The indices are repaired first if
+     * documents were added since they were populated, see repairIndices.
+     *
+     * @param targetDocument the document to find similar documents to, it does not need to be in the tree
+     * @param k              the number of documents to return
+     * @return at most <tt>k</tt> documents, sorted from the most similar one
+     * @throws IllegalArgumentException if <tt>k</tt> is not positive
+     * @throws IllegalStateException    if populateIndices are not called beforehand
+     */
+    public List<SimilarDocument> getTopKSimilar(String targetDocument, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of documents must be positive. Got " + k);
+        }
+        repairIndices();
+
+        SuffixTreeView view = getView();
+        int length = targetDocument.length();
+        int[] matchNodes = new int[length];
+        int[] matchLengths = new int[length];
+        matchingStatistics(view, targetDocument, matchNodes, matchLengths);
+
+        LengthBuckets buckets = new LengthBuckets(length);
+        for (int j = 0; j < length; j++) {
+            if (matchLengths[j] > 0) {
+                buckets.add(matchLengths[j], matchNodes[j]);
+            }
+        }
+
+        QueryScratch scratch = SCRATCH.get().available();
+        scratch.start(last, view.size());
+        // k may be far more than the documents found, the queue grows as they are
+        PriorityQueue<SimilarDocument> best = new PriorityQueue<SimilarDocument>(Math.min(k, 16), WORST_FIRST);
+        for (int lcSubstring = length; lcSubstring > 0; lcSubstring--) {
+            float bound = (float) 2 * lcSubstring / (length + lcSubstring);
+            if (bound <= minimumRatio || best.size() == k && bound < best.peek().getSimilarity()) {
+                break;
+            }
+
+            for (int node = buckets.poll(lcSubstring); node != SuffixTreeView.NONE; node = buckets.poll(lcSubstring)) {
+                // the buckets are drained from the longest length, so a node visited before had a longer one
+                if (scratch.visit(node, lcSubstring) != -1) {
+                    continue;
+                }
+                int end = view.getPostingEnd(node);
+                int[] postings = view.getPostings(node);
+                for (int i = view.getPostingStart(node); i < end; i++) {
+                    int id = postings[i];
+                    if (!scratch.record(id, lcSubstring)) {
+                        continue;
+                    }
+                    float similarity = similarity(targetDocument, id, lcSubstring);
+                    if (similarity <= minimumRatio) {
+                        // the document may be missing from deeper nodes, so this is not its exact similarity
+                        continue;
+                    }
+                    SimilarDocument document = new SimilarDocument(id, similarity);
+                    if (best.size() < k) {
+                        best.add(document);
+                    } else if (WORST_FIRST.compare(document, best.peek()) > 0) {
+                        best.poll();
+                        best.add(document);
+                    }
+                }
+
+                int ancestor = view.getContributingAncestor(node);
+                if (ancestor != SuffixTreeView.NONE && view.getSubstringLength(ancestor) > 0) {
+                    buckets.add(view.getSubstringLength(ancestor), ancestor);
+                }
+            }
+        }
+        scratch.releaseNodes();
+
+        List<SimilarDocument> results = new ArrayList<SimilarDocument>(best);
+        results.sort(Collections.reverseOrder(WORST_FIRST));
+        return results;
+    }
+
+    /**
+     * The scratch space of the queries run by each thread, shared by all the trees, see QueryScratch.available
+     */
+    private static final ThreadLocal<QueryScratch> SCRATCH = ThreadLocal.withInitial(QueryScratch::new);
+
+    /**
+     * Orders the results of a query from the least similar one, the larger index first among equally similar ones
+     */
+    static final Comparator<SimilarDocument> WORST_FIRST = new Comparator<SimilarDocument>() {
+        public int compare(SimilarDocument a, SimilarDocument b) {
+            int bySimilarity = Float.compare(a.getSimilarity(), b.getSimilarity());
+            return bySimilarity != 0 ? bySimilarity : Integer.compare(b.getIndex(), a.getIndex());
+        }
+    };
+
+    /**
+     * Computes the matching statistics of <tt>target</tt>: for every offset j, matchLengths[j] is the length of the
+     * longest prefix of target[j, m) which occurs in the tree, and matchNodes[j] is the node at or below its end.
+     * <p>
+     * The target is streamed through the tree: the match is extended as far as the tree allows, and then moved to
+     * the next offset by following the suffix link of the node above its end and walking the rest of it down again
+     * by comparing label lengths only, so this takes O(m) steps.
+     */
+    private static void matchingStatistics(SuffixTreeView view, String target, int[] matchNodes, int[] matchLengths) {
+        int length = target.length();
+        // the match of target[j, j + matched) ends in node, or on the edge which enters child
+        int node = SuffixTreeView.ROOT;
+        int child = SuffixTreeView.NONE;
+        int matched = 0;
+        for (int j = 0; j < length; j++) {
+            // extend the match as far as the tree allows
+            while (j + matched < length) {
+                char c = target.charAt(j + matched);
+                int onEdge = matched - view.getSubstringLength(node);
+                if (onEdge == 0) {
+                    child = view.getChild(node, c);
+                    if (child == SuffixTreeView.NONE) {
+                        break;
+                    }
+                } else if (view.getLabelChar(child, onEdge) != c) {
+                    break;
+                }
+                matched++;
+                if (onEdge + 1 == view.getLabelLength(child)) {
+                    node = child;
+                    child = SuffixTreeView.NONE;
+                }
+            }
+
+            matchNodes[j] = child == SuffixTreeView.NONE ? node : child;
+            matchLengths[j] = matched;
+            if (matched == 0) {
+                continue;
+            }
+
+            // move to the match of target[j + 1, j + matched)
+            matched--;
+            int suffix = node == SuffixTreeView.ROOT ? SuffixTreeView.NONE : view.getSuffix(node);
+            node = suffix == SuffixTreeView.NONE ? SuffixTreeView.ROOT : suffix;
+            child = SuffixTreeView.NONE;
+            int position = j + 1 + view.getSubstringLength(node);
+            while (position < j + 1 + matched) {
+                int next = view.getChild(node, target.charAt(position));
+                if (view.getSubstringLength(node) + view.getLabelLength(next) > matched) {
+                    child = next;
+                    break;
+                }
+                node = next;
+                position += view.getLabelLength(next);
+            }
+        }
+    }
+
+    /**
+     * Sets the lowest ratio the similarity queries will be run with, 0 by default.
+     * <p>
+     * The index set of a node then only keeps the documents which may be similar above that ratio to a target
+     * through the string of the node: as such a target is at least as long as the string, a node of length L
+     * drops the documents d for which 2 * L / (L + |d|) does not exceed the ratio. The root and the shallow
+     * nodes, which have the largest index sets, keep few documents or none.
+     * <p>
+     * Queries with a lower ratio are rejected, getTopKSimilar only returns documents similar above the ratio,
+     * and search on a frozen tree needs freeze(PostingFormat.LISTING).
+     *
+     * @param minimumRatio the lowest ratio the similarity queries will be run with
+     * @throws IllegalArgumentException if <tt>minimumRatio</tt> is not in [0, 1)
+     * @throws IllegalStateException    if the indices were populated already
+     */
+    public void setMinimumRatio(float minimumRatio) {
+        if (!(minimumRatio >= 0 && minimumRatio < 1)) {
+            throw new IllegalArgumentException("The minimum ratio must be in [0, 1). Got " + minimumRatio);
+        }
+        if (nodes != null || frozenTree != null) {
+            throw new IllegalStateException("The minimum ratio must be set before the indices are populated.");
+        }
+        this.minimumRatio = minimumRatio;
+    }
+
+    /**
+     * Sets whether the similarity queries jump from a node to its nearest ancestor which has more postings, true
+     * by default.
+     * <p>
+     * The ancestors in between have the same documents as the node, which were already recorded, so a query
+     * only visits the nodes which bring new documents, at the cost of an int per node: the tree keeps the
+     * ancestor of every node once a query needed it, and a frozen tree keeps them in its layout. Without the
+     * jumps, the queries climb one parent at a time and give the same results. The jumps are not used with a
+     * minimum ratio or lazily populated indices, whose index sets do not contain the ones of the children.
+     *
+     * @param ancestorJumps whether the queries jump over the ancestors which have the same postings
+     * @throws IllegalStateException if the tree is frozen, its layout being fixed
+     */
+    public void setAncestorJumps(boolean ancestorJumps) {
+        if (frozenTree != null) {
+            throw new IllegalStateException("The tree is frozen, the ancestor jumps must be set before freeze.");
+        }
+        this.ancestorJumps = ancestorJumps;
+        if (!ancestorJumps) {
+            contributingAncestors = null;
+        }
+    }
+
+    /**
+     * In the abahgat's suffix tree implementation, each node represents a substring
+     * and a leaf contains the id of strings which contain the substrings represented by the leaf.
+     * This function agglomerates and stores indices from leaves to root
+     * <p>
+     * The index set of a node is the merge of its own indexes and the index sets of its children,
+     * which are all sorted, so every index set is sorted and has no duplicates.
+     */
+    public void populateIndices() {
+        populateIndices(1);
+    }
+
+    /**
+     * Populates the indices like populateIndices(), using up to <tt>parallelism</tt> threads.
+     * The subtrees are populated on a fork-join pool, and the resulting index sets are the same.
+     *
+     * @param parallelism the number of threads to populate the indices with
+     * @throws IllegalArgumentException if <tt>parallelism</tt> is not positive
+     */
+    public void populateIndices(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive. Got " + parallelism);
+        }
+        if (frozenTree != null) {
+            throw new IllegalStateException("The tree is frozen, its indices are already populated.");
+        }
+        createNodeArray();
+        interner = new IndexSetInterner();
+        new IndexPopulator(nodes, parallelism, documentLengths, minimumRatio, interner).populate();
+        lazyIndex = null;
+        contributingAncestors = null;
+
+        for (Node node : dirtyNodes) {
+            node.dirty = false;
+        }
+        dirtyNodes.clear();
+        dirtySince = Integer.MAX_VALUE;
+        areIndicesPopulated = true;
+    }
+
+    /**
+     * Prepares the tree for the queries like populateIndices(), without computing any index set up front.
+     * <p>
+     * The index set of a node is computed, from the ones of its children, the first time a query needs it and
+     * it is then kept in the node, where the concurrent queries share it. The nodes which no query reaches never
+     * have their index set computed, so the tree can be queried right away after it is built.
+     *
+     * @see #populateIndicesLazily(long)
+     */
+    public void populateIndicesLazily() {
+        populateIndicesLazily(Long.MAX_VALUE);
+    }
+
+    /**
+     * Prepares the tree for the queries like populateIndicesLazily(), keeping at most about <tt>maxPostings</tt>
+     * indexes in the computed index sets. Beyond it, the sets which were not read recently are dropped and will
+     * be computed again when a query needs them, trading CPU for memory.
+     *
+     * @param maxPostings the number of indexes the computed index sets can hold
+     * @throws IllegalArgumentException if <tt>maxPostings</tt> is negative
+     */
+    public void populateIndicesLazily(long maxPostings) {
+        if (maxPostings < 0) {
+            throw new IllegalArgumentException("The number of postings must not be negative. Got " + maxPostings);
+        }
+        if (frozenTree != null) {
+            throw new IllegalStateException("The tree is frozen, its indices are already populated.");
+        }
+        createNodeArray();
+        for (Node node : nodes) {
+            node.indexSet = null;
+            node.indexBitmap = null;
+            node.indexSize = 0;
+            node.dirty = false;
+        }
+        dirtyNodes.clear();
+        dirtySince = Integer.MAX_VALUE;
+        lazyIndex = new LazyIndex(maxPostings, () -> documentLengths, minimumRatio);
+        interner = null;
+        contributingAncestors = null;
+        areIndicesPopulated = true;
+    }
+
+    /**
+     * Brings the indices up to date after documents were added to a tree whose indices were populated.
+     * <p>
+     * Only the nodes on the root paths of the new suffixes, which put marks as dirty, are merged again,
+     * instead of the whole tree as populateIndices does. The queries call it by themselves, but it can
+     * also be called ahead of them, e.g. by a background job after a batch of puts.
+     * <p>
+     * The repair runs under the lock of the tree, so concurrent queries after a put repair the indices once. It
+     * must not run concurrently with put, see the class comment.
+     *
+     * @throws IllegalStateException if populateIndices is not called beforehand
+     */
+    public void repairIndices() {
+        if (areIndicesPopulated) {
+            return;
+        }
+        synchronized (this) {
+            if (!areIndicesPopulated) {
+                repairDirtyNodes();
+            }
+        }
+    }
+
+    /**
+     * Repairs the indices like repairIndices, the caller holding the lock of the tree
+     */
+    private void repairDirtyNodes() {
+        if (nodes == null) {
+            throw new IllegalStateException("You should populate indices before using this function. See readme for a sample example");
+        }
+
+        if (lazyIndex != null) {
+            // the changed sets are dropped, to be computed again when a query reaches them
+            for (Node node : dirtyNodes) {
+                if (node.getSourceEdge() != null && node.getSourceEdge().getDestNodeId() == SuffixTreeView.NONE) {
+                    node.getSourceEdge().setDestNodeId(nodes.size());
+                    nodes.add(node);
+                }
+                lazyIndex.invalidate(node);
+                node.dirty = false;
+            }
+        } else {
+            if (interner == null) {
+                // a deserialized tree shares its sets again from the first repair on
+                interner = new IndexSetInterner();
+                for (Node node : nodes) {
+                    if (node.indexSet != null) {
+                        node.indexSet = interner.intern(node.indexSet);
+                    }
+                }
+            }
+            new IndexPopulator(nodes, 1, documentLengths, minimumRatio, interner).repair(dirtyNodes, dirtySince);
+            repairContributingAncestors();
+        }
+        dirtyNodes.clear();
+        dirtySince = Integer.MAX_VALUE;
+        areIndicesPopulated = true;
+    }
+
+    /**
+     * Converts the tree into flat primitive arrays, which are faster to query and take less memory.
+     * <p>
+     * The node, edge and edge bag objects are released, so afterwards the tree can be queried with search
+     * and getSimilarStringIndexes but no document can be added to it and its nodes can not be accessed.
+     *
+     * @throws IllegalStateException if populateIndices is not called beforehand
+     */
+    public void freeze() {
+        freeze(PostingFormat.ARRAY);
+    }
+
+    /**
+     * Converts the tree into flat primitive arrays like freeze().
+     * <p>
+     * If <tt>listDocuments</tt> is true, the index sets of the nodes are not copied: the indexes held by the nodes
+     * are laid out in depth-first order, so that every subtree is a range of them, and the distinct documents of
+     * a node are listed from its range by range minimum queries over the previous occurrence of each index.
+     * The index memory is then linear in the total length of the documents, instead of growing with the depth
+     * of the tree times the number of documents, at the cost of a range minimum query per listed document.
+     *
+     * @param listDocuments whether to list the documents of the nodes from depth-first ranges
+     * @throws IllegalStateException if populateIndices is not called beforehand
+     * @see #freeze(PostingFormat)
+     */
+    public void freeze(boolean listDocuments) {
+        freeze(listDocuments ? PostingFormat.LISTING : PostingFormat.ARRAY);
+    }
+
+    /**
+     * Converts the tree into flat primitive arrays like freeze(), storing the index sets of the nodes in the
+     * given format.
+     *
+     * @param format how the index sets of the nodes are stored
+     * @throws IllegalStateException if populateIndices is not called beforehand
+     */
+    public void freeze(PostingFormat format) {
+        if (frozenTree != null) {
+            return;
+        }
+        repairIndices();
+        if (lazyIndex != null) {
+            populateIndices();
+        }
+
+        // the nodes appended by repairIndices are out of breadth-first order
+        createNodeArray();
+        frozenTree = new FrozenTree(nodes, arena, format, Arrays.copyOf(documentLengths, last + 1), minimumRatio,
+                ancestorJumps);
+        nodes = null;
+        interner = null;
+        contributingAncestors = null;
+        root = new Node();
+        activeLeaf = root;
+        activeNode = root;
+        testNode = root;
+    }
+
+    public boolean isFrozen() {
+        return frozenTree != null;
+    }
+
+    /**
+     * Returns the number of bytes which the index sets of the nodes would take on top of the ones they take,
+     * if the nodes whose index sets have the same content did not share them.
+     * <p>
+     * An int array is counted as a 16-byte header followed by its ints, as in a 64-bit JVM with compressed oops.
+     * A frozen tree stores its index sets in its own arrays, so nothing is shared once the tree is frozen.
+     *
+     * @return the number of bytes saved by sharing the index sets, 0 if the tree is frozen
+     * @throws IllegalStateException if populateIndices is not called beforehand
+     */
+    public long getSharedIndexSetBytes() {
+        if (frozenTree != null) {
+            return 0;
+        }
+        repairIndices();
+        Set<int[]> seen = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+        long bytes = 0;
+        for (Node node : nodes) {
+            if (node.indexSet != null && !seen.add(node.indexSet)) {
+                bytes += 16 + 4L * node.indexSet.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the view which the queries run on, the frozen tree if there is one.
+     */
+    SuffixTreeView getView() {
+        if (frozenTree != null) {
+            return frozenTree.view();
+        }
+        return new NodeView();
+    }
+
+    /**
+     * Computes the nearest ancestor of each node which has more postings than the node, in a traversal from the
+     * root since the nodes appended by repairIndices are out of breadth-first order
+     */
+    private int[] createContributingAncestors() {
+        int[] ancestors = new int[nodes.size()];
+        int[] queue = new int[nodes.size()];
+        ancestors[SuffixTreeView.ROOT] = SuffixTreeView.NONE;
+        queue[0] = SuffixTreeView.ROOT;
+        int tail = 1;
+        for (int head = 0; head < tail; head++) {
+            int parent = queue[head];
+            Node parentNode = nodes.get(parent);
+            for (Edge e : parentNode.getEdges().values()) {
+                int child = e.getDestNodeId();
+                ancestors[child] = parentNode.indexSize > e.getDest().indexSize ? parent : ancestors[parent];
+                queue[tail++] = child;
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * Updates the contributing ancestors after repairIndices, from the dirty nodes down: they and their children
+     * are compared with their parent again, and a node whose ancestor changed passes it on to the descendants
+     * which have the same postings as it. The other nodes keep theirs, so the cost follows the repaired nodes.
+     */
+    private void repairContributingAncestors() {
+        int[] ancestors = contributingAncestors;
+        if (ancestors == null) {
+            return;
+        }
+        if (ancestors.length < nodes.size()) {
+            ancestors = Arrays.copyOf(ancestors, Math.max(nodes.size(), 2 * ancestors.length));
+        }
+
+        // the ancestors of a dirty node are dirty, and shorter than it
+        List<Node> repaired = new ArrayList<Node>(dirtyNodes);
+        repaired.sort((a, b) -> Integer.compare(a.getSubstringLength(), b.getSubstringLength()));
+        ArrayList<Node> stack = new ArrayList<Node>();
+        for (Node node : repaired) {
+            updateContributingAncestor(ancestors, node);
+            for (Edge e : node.getEdges().values()) {
+                stack.add(e.getDest());
+            }
+            while (!stack.isEmpty()) {
+                Node child = stack.remove(stack.size() - 1);
+                if (updateContributingAncestor(ancestors, child)) {
+                    for (Edge e : child.getEdges().values()) {
+                        if (e.getDest().indexSize == child.indexSize) {
+                            stack.add(e.getDest());
+                        }
+                    }
+                }
+            }
+        }
+        contributingAncestors = ancestors;
+    }
+
+    /**
+     * Sets the contributing ancestor of <tt>node</tt> from its parent, and returns whether it changed
+     */
+    private static boolean updateContributingAncestor(int[] ancestors, Node node) {
+        Edge edge = node.getSourceEdge();
+        if (edge == null) {
+            ancestors[SuffixTreeView.ROOT] = SuffixTreeView.NONE;
+            return false;
+        }
+        Node parent = edge.getSource();
+        int parentId = parent.getSourceEdge() == null ? SuffixTreeView.ROOT : parent.getSourceEdge().getDestNodeId();
+        int ancestor = parent.indexSize > node.indexSize ? parentId : ancestors[parentId];
+        if (ancestors[edge.getDestNodeId()] == ancestor) {
+            return false;
+        }
+        ancestors[edge.getDestNodeId()] = ancestor;
+        return true;
     }
 
     /**
@@ -526,24 +1637,145 @@ public class GeneralizedSuffixTree implements Serializable {
     }
 
     /**
-     * A private class used to return a tuples of two elements
+     * Nodes bucketed by a length, as linked lists stored in growable arrays
      */
-    private class Pair<A, B> {
+    private static final class LengthBuckets {
+
+        private final int[] heads;
+        private int[] bucketNodes = new int[16];
+        private int[] nexts = new int[16];
+        private int size = 0;
+
+        LengthBuckets(int maxLength) {
+            heads = new int[maxLength + 1];
+            Arrays.fill(heads, -1);
+        }
 
-        private final A first;
-        private final B second;
+        void add(int length, int node) {
+            if (size == bucketNodes.length) {
+                bucketNodes = Arrays.copyOf(bucketNodes, size * 2);
+                nexts = Arrays.copyOf(nexts, size * 2);
+            }
+            bucketNodes[size] = node;
+            nexts[size] = heads[length];
+            heads[length] = size++;
+        }
 
-        public Pair(A first, B second) {
-            this.first = first;
-            this.second = second;
+        /**
+         * Removes a node from the bucket of <tt>length</tt> and returns it, NONE if the bucket is empty
+         */
+        int poll(int length) {
+            int entry = heads[length];
+            if (entry == -1) {
+                return SuffixTreeView.NONE;
+            }
+            heads[length] = nexts[entry];
+            return bucketNodes[entry];
         }
+    }
 
-        public A getFirst() {
-            return first;
+    /**
+     * The view of the node objects, identified by their position in <tt>nodes</tt>
+     */
+    private class NodeView implements SuffixTreeView {
+
+        /**
+         * The indexes of the node whose bitmap was decoded last, a view is used by a single query
+         */
+        private int[] decoded = new int[0];
+        private int decodedNode = NONE;
+
+        private int id(Node node) {
+            if (node == null) {
+                return NONE;
+            }
+            return node.getSourceEdge() == null ? ROOT : node.getSourceEdge().getDestNodeId();
+        }
+
+        public int size() {
+            return nodes.size();
+        }
+
+        public int searchNode(String word) {
+            return id(GeneralizedSuffixTree.this.searchNode(word));
+        }
+
+        public int getChild(int node, char c) {
+            Edge edge = nodes.get(node).getEdge(c);
+            return edge == null ? NONE : edge.getDestNodeId();
+        }
+
+        public int getLabelLength(int node) {
+            return nodes.get(node).getSourceEdge().getLabelLength();
+        }
+
+        public char getLabelChar(int node, int index) {
+            return nodes.get(node).getSourceEdge().getLabelChar(index);
+        }
+
+        public int getParent(int node) {
+            return id(nodes.get(node).getSourceNode());
+        }
+
+        public int getContributingAncestor(int node) {
+            if (!ancestorJumps || minimumRatio > 0 || lazyIndex != null) {
+                // the index set of a node no longer contains the ones of its children, or is not computed yet
+                return getParent(node);
+            }
+            int[] ancestors = contributingAncestors;
+            if (ancestors == null) {
+                // concurrent queries may both compute it, to the same content
+                ancestors = createContributingAncestors();
+                contributingAncestors = ancestors;
+            }
+            return ancestors[node];
+        }
+
+        public int getSuffix(int node) {
+            return id(nodes.get(node).getSuffix());
+        }
+
+        public int getSubstringLength(int node) {
+            return nodes.get(node).getSubstringLength();
+        }
+
+        public int[] getPostings(int node) {
+            Node current = nodes.get(node);
+            if (lazyIndex != null) {
+                return lazyIndex.getIndexSet(current);
+            }
+            IndexBitmap bitmap = current.indexBitmap;
+            if (bitmap == null) {
+                return current.indexSet;
+            }
+            if (node != decodedNode) {
+                if (decoded.length < bitmap.size()) {
+                    decoded = new int[Math.max(bitmap.size(), 2 * decoded.length)];
+                }
+                bitmap.toArray(decoded);
+                decodedNode = node;
+            }
+            return decoded;
+        }
+
+        public IndexBitmap getPostingBitmap(int node) {
+            return lazyIndex != null ? null : nodes.get(node).indexBitmap;
+        }
+
+        public int getPostingStart(int node) {
+            return 0;
+        }
+
+        public int getPostingEnd(int node) {
+            Node current = nodes.get(node);
+            if (lazyIndex != null) {
+                return lazyIndex.getIndexSet(current).length;
+            }
+            return current.indexSize;
         }
 
-        public B getSecond() {
-            return second;
+        public int getPostingEnd(int node, int maximumLength) {
+            return getPostingEnd(node);
         }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * An index set stored as a bitmap over the range of words which hold its indexes, for the nodes whose index sets
+ * cover a large share of the documents.
+ * <p>
+ * A bitmap takes a bit per index of its range, where a sorted array takes 32 bits per index it holds, so it is the
+ * smaller one as soon as the set holds more than one index out of 32 of its range. Such sets are found near the
+ * root, where they are the largest ones of the tree, and the union of a node's children then amounts to OR-ing
+ * their words instead of merging their indexes one by one.
+ */
+final class IndexBitmap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of indexes below which a set is kept as an array whatever its density
+     */
+    static final int MINIMUM_SIZE = 64;
+
+    /**
+     * words[i] holds the indexes [64 * (firstWord + i), 64 * (firstWord + i + 1))
+     */
+    private final int firstWord;
+    private final long[] words;
+    private final int size;
+
+    private IndexBitmap(int firstWord, long[] words, int size) {
+        this.firstWord = firstWord;
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * Returns whether a set of <tt>size</tt> indexes in [first, last] is smaller as a bitmap than as an array
+     */
+    static boolean isDense(int size, int first, int last) {
+        return size >= MINIMUM_SIZE && 2L * ((last >>> 6) - (first >>> 6) + 1) < size;
+    }
+
+    /**
+     * Returns the bitmap of the sorted indexes <tt>indexSet</tt>, which must not be empty
+     */
+    static IndexBitmap of(int[] indexSet) {
+        int firstWord = indexSet[0] >>> 6;
+        long[] words = new long[(indexSet[indexSet.length - 1] >>> 6) - firstWord + 1];
+        for (int index : indexSet) {
+            words[(index >>> 6) - firstWord] |= 1L << index;
+        }
+        return new IndexBitmap(firstWord, words, indexSet.length);
+    }
+
+    /**
+     * Returns the bitmap of the indexes set in <tt>words</tt>, whose first word holds the indexes from
+     * 64 * <tt>firstWord</tt> on, without its leading and trailing empty words. The array is not copied if
+     * it has none.
+     */
+    static IndexBitmap of(int firstWord, long[] words) {
+        int start = 0;
+        int end = words.length;
+        while (start < end && words[start] == 0) {
+            start++;
+        }
+        while (end > start && words[end - 1] == 0) {
+            end--;
+        }
+        int size = 0;
+        for (int i = start; i < end; i++) {
+            size += Long.bitCount(words[i]);
+        }
+        if (start > 0 || end < words.length) {
+            words = Arrays.copyOfRange(words, start, end);
+        }
+        return new IndexBitmap(firstWord + start, words, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the smallest index of the set, which must not be empty
+     */
+    int first() {
+        return (firstWord << 6) + Long.numberOfTrailingZeros(words[0]);
+    }
+
+    /**
+     * Returns the largest index of the set, which must not be empty
+     */
+    int last() {
+        return ((firstWord + words.length) << 6) - 1 - Long.numberOfLeadingZeros(words[words.length - 1]);
+    }
+
+    /**
+     * ORs the words of this bitmap into <tt>target</tt>, whose first word holds the indexes from
+     * 64 * <tt>targetFirstWord</tt> on and which must cover the range of this bitmap
+     */
+    void orInto(long[] target, int targetFirstWord) {
+        int offset = firstWord - targetFirstWord;
+        for (int i = 0; i < words.length; i++) {
+            target[offset + i] |= words[i];
+        }
+    }
+
+    /**
+     * Writes the indexes of the set in increasing order at the start of <tt>buffer</tt>, which must hold
+     * at least size() ints, and returns their number
+     */
+    int toArray(int[] buffer) {
+        int count = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            int base = (firstWord + i) << 6;
+            while (word != 0) {
+                buffer[count++] = base + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records a common substring of length <tt>length</tt> with every document of the set
+     */
+    void record(int length, QueryScratch scratch) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            int base = (firstWord + i) << 6;
+            while (word != 0) {
+                scratch.record(base + Long.numberOfTrailingZeros(word), length);
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Passes the indexes of the set in increasing order to <tt>visitor</tt> until it returns false
+     *
+     * @return true if every index was visited
+     */
+    boolean forEach(IntPredicate visitor) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            int base = (firstWord + i) << 6;
+            while (word != 0) {
+                if (!visitor.test(base + Long.numberOfTrailingZeros(word))) {
+                    return false;
+                }
+                word &= word - 1;
+            }
+        }
+        return true;
+    }
+
+    int[] toArray() {
+        int[] indexSet = new int[size];
+        toArray(indexSet);
+        return indexSet;
+    }
+}
@@ -0,0 +1,339 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the index set of every node of a tree bottom-up, as the merge of the indexes of the node
+ * and the index sets of its children.
+ * <p>
+ * The index set of a node depends only on its subtree, so with a parallelism greater than one the subtrees
+ * are populated on a fork-join pool: a subtree with more than SEQUENTIAL_THRESHOLD nodes forks a task for
+ * each of its children and merges its own node once they are done, a smaller one is populated by the task
+ * itself. The index sets are the same as the ones computed sequentially.
+ * <p>
+ * With a minimum ratio, the index set of a node only keeps the documents which may be similar above that ratio
+ * to a target through the string of the node. Such a target is at least as long as the string, so a document d
+ * is dropped from a node of length L when 2 * L / (L + |d|) does not exceed the ratio. The documents kept by a
+ * node are kept by its children too, so the sets are still computed from the ones of the children.
+ * <p>
+ * The index sets with the same content are shared by the nodes through an IndexSetInterner, which the tree keeps
+ * from one repair to the next. The dense ones are stored as an IndexBitmap instead, and a node with such a child
+ * is computed by OR-ing the words of the bitmaps.
+ */
+class IndexPopulator {
+
+    /**
+     * The number of nodes up to which a subtree is populated by a single task
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+
+    /**
+     * The nodes of the tree in breadth-first order, the children ids are stored in their source edges
+     */
+    private final List<Node> nodes;
+    private final int parallelism;
+    /**
+     * The length of the document of each index and the ratio below which no query is run
+     */
+    private final int[] documentLengths;
+    private final float minimumRatio;
+    private final IndexSetInterner interner;
+
+    private int[] subtreeSizes;
+    private ThreadLocal<PostingMerger> mergers;
+    private ThreadLocal<int[]> stacks;
+
+    /**
+     * @param interner the interner of the sets of the tree, empty unless the tree is being repaired
+     */
+    IndexPopulator(List<Node> nodes, int parallelism, int[] documentLengths, float minimumRatio,
+                   IndexSetInterner interner) {
+        this.nodes = nodes;
+        this.parallelism = parallelism;
+        this.documentLengths = documentLengths;
+        this.minimumRatio = minimumRatio;
+        this.interner = interner;
+    }
+
+    void populate() {
+        if (parallelism == 1) {
+            PostingMerger merger = new PostingMerger();
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                populate(nodes.get(i), merger);
+            }
+            return;
+        }
+
+        subtreeSizes = new int[nodes.size()];
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            subtreeSizes[i]++;
+            Node node = nodes.get(i);
+            if (node.getSourceEdge() != null) {
+                subtreeSizes[id(node.getSourceNode())] += subtreeSizes[i];
+            }
+        }
+        mergers = ThreadLocal.withInitial(PostingMerger::new);
+        stacks = ThreadLocal.withInitial(() -> new int[64]);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SubtreeTask(SuffixTreeView.ROOT));
+        } finally {
+            pool.shutdown();
+        }
+        subtreeSizes = null;
+        mergers = null;
+        stacks = null;
+    }
+
+    /**
+     * Sets the index set of <tt>node</tt>, whose children must be populated already.
+     */
+    private void populate(Node node, PostingMerger merger) {
+        for (Edge e : node.getEdges().values()) {
+            if (e.getDest().indexBitmap != null) {
+                populateBitmap(node);
+                return;
+            }
+        }
+
+        int[] data = node.getNodeData();
+        merger.add(data, 0, data.length);
+        for (Edge e : node.getEdges().values()) {
+            Node child = e.getDest();
+            merger.add(child.indexSet, 0, child.indexSize);
+        }
+
+        setIndexSet(node, merger.merge());
+    }
+
+    /**
+     * Sets the index set of <tt>node</tt>, some of whose children have a bitmap, to the union of its indexes and
+     * of the index sets of its children, computed as a bitmap over the range of all of them.
+     */
+    private void populateBitmap(Node node) {
+        int[] data = node.getNodeData();
+        int first = data.length > 0 ? data[0] : Integer.MAX_VALUE;
+        int last = data.length > 0 ? data[data.length - 1] : -1;
+        for (Edge e : node.getEdges().values()) {
+            Node child = e.getDest();
+            if (child.indexBitmap != null) {
+                first = Math.min(first, child.indexBitmap.first());
+                last = Math.max(last, child.indexBitmap.last());
+            } else if (child.indexSize > 0) {
+                first = Math.min(first, child.indexSet[0]);
+                last = Math.max(last, child.indexSet[child.indexSize - 1]);
+            }
+        }
+
+        int firstWord = first >>> 6;
+        long[] words = new long[(last >>> 6) - firstWord + 1];
+        for (int index : data) {
+            words[(index >>> 6) - firstWord] |= 1L << index;
+        }
+        for (Edge e : node.getEdges().values()) {
+            Node child = e.getDest();
+            if (child.indexBitmap != null) {
+                child.indexBitmap.orInto(words, firstWord);
+            } else {
+                for (int i = 0; i < child.indexSize; i++) {
+                    words[(child.indexSet[i] >>> 6) - firstWord] |= 1L << child.indexSet[i];
+                }
+            }
+        }
+
+        if (minimumRatio > 0) {
+            int length = node.getSubstringLength();
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    int index = ((firstWord + i) << 6) + Long.numberOfTrailingZeros(word);
+                    if (!((float) 2 * length / (length + documentLengths[index]) > minimumRatio)) {
+                        words[i] &= ~(1L << index);
+                    }
+                }
+            }
+        }
+
+        IndexBitmap bitmap = IndexBitmap.of(firstWord, words);
+        if (bitmap.size() > 0 && IndexBitmap.isDense(bitmap.size(), bitmap.first(), bitmap.last())) {
+            node.indexSet = null;
+            node.indexBitmap = bitmap;
+            node.indexSize = bitmap.size();
+        } else {
+            setIndexSet(node, bitmap.toArray());
+        }
+    }
+
+    /**
+     * Sets the index set of <tt>node</tt> to the given merged one, without the documents below the minimum ratio,
+     * or to an equal set of another node. A dense set is stored as a bitmap.
+     */
+    private void setIndexSet(Node node, int[] indexSet) {
+        indexSet = cut(indexSet, node.getSubstringLength(), documentLengths, minimumRatio);
+        if (indexSet.length > 0 && IndexBitmap.isDense(indexSet.length, indexSet[0], indexSet[indexSet.length - 1])) {
+            node.indexSet = null;
+            node.indexBitmap = IndexBitmap.of(indexSet);
+        } else {
+            node.indexSet = interner.intern(indexSet);
+            node.indexBitmap = null;
+        }
+        node.indexSize = indexSet.length;
+    }
+
+    /**
+     * Removes from the index set of a node of length <tt>length</tt> the documents which can not be similar
+     * above <tt>minimumRatio</tt> through it, and returns it.
+     */
+    static int[] cut(int[] indexSet, int length, int[] documentLengths, float minimumRatio) {
+        if (minimumRatio <= 0) {
+            return indexSet;
+        }
+        int size = 0;
+        for (int id : indexSet) {
+            if ((float) 2 * length / (length + documentLengths[id]) > minimumRatio) {
+                indexSet[size++] = id;
+            }
+        }
+        return size < indexSet.length ? Arrays.copyOf(indexSet, size) : indexSet;
+    }
+
+    /**
+     * Brings the index sets of <tt>dirtyNodes</tt> up to date after documents were added to a populated tree,
+     * and appends the nodes created since then to the nodes.
+     * <p>
+     * Every ancestor of a dirty node must be dirty too. Indexes are never removed from a subtree, and the ones
+     * added since the last population are not less than <tt>since</tt>, so a node which was populated before
+     * merges its old index set with only the tails from <tt>since</tt> on of its data and of its children's
+     * index sets. A new node merges them all, as does a node with a bitmap or with a child which has one, since
+     * the words of the bitmaps are OR-ed at once. The replaced sets are released from the interner, which then
+     * shares the repaired sets with the ones already in the tree.
+     */
+    void repair(List<Node> dirtyNodes, int since) {
+        // a child is longer than its parent, so the children come first
+        dirtyNodes.sort((a, b) -> Integer.compare(b.getSubstringLength(), a.getSubstringLength()));
+
+        PostingMerger merger = new PostingMerger();
+        for (Node node : dirtyNodes) {
+            int[] replaced = node.indexSet;
+            if (node.getSourceEdge() != null && node.getSourceEdge().getDestNodeId() == SuffixTreeView.NONE) {
+                node.getSourceEdge().setDestNodeId(nodes.size());
+                nodes.add(node);
+                populate(node, merger);
+            } else if (node.indexBitmap != null || hasBitmapChild(node)) {
+                populate(node, merger);
+            } else {
+                merger.add(node.indexSet, 0, node.indexSize);
+                int[] data = node.getNodeData();
+                merger.add(data, tail(data, data.length, since), data.length);
+                for (Edge e : node.getEdges().values()) {
+                    Node child = e.getDest();
+                    merger.add(child.indexSet, tail(child.indexSet, child.indexSize, since), child.indexSize);
+                }
+                setIndexSet(node, merger.merge());
+            }
+            if (replaced != null) {
+                interner.release(replaced);
+            }
+            node.dirty = false;
+        }
+    }
+
+    private static boolean hasBitmapChild(Node node) {
+        for (Edge e : node.getEdges().values()) {
+            if (e.getDest().indexBitmap != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the position of the first index of the sorted list[0, size) which is not less than <tt>since</tt>.
+     */
+    private static int tail(int[] list, int size, int since) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list[mid] < since) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int id(Node node) {
+        return node.getSourceEdge() == null ? SuffixTreeView.ROOT : node.getSourceEdge().getDestNodeId();
+    }
+
+    private class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+
+        SubtreeTask(int node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (subtreeSizes[node] <= SEQUENTIAL_THRESHOLD) {
+                populateSubtree();
+                return;
+            }
+
+            List<SubtreeTask> children = new ArrayList<>();
+            for (Edge e : nodes.get(node).getEdges().values()) {
+                children.add(new SubtreeTask(e.getDestNodeId()));
+            }
+            invokeAll(children);
+            populate(nodes.get(node), mergers.get());
+        }
+
+        /**
+         * Lists the subtree in pre-order and populates it in reverse, so that the children come before their parent.
+         */
+        private void populateSubtree() {
+            int[] preorder = stacks.get();
+            if (preorder.length < subtreeSizes[node]) {
+                preorder = Arrays.copyOf(preorder, Math.max(subtreeSizes[node], preorder.length * 2));
+                stacks.set(preorder);
+            }
+
+            int size = 0;
+            preorder[size++] = node;
+            for (int i = 0; i < size; i++) {
+                for (Edge e : nodes.get(preorder[i]).getEdges().values()) {
+                    preorder[size++] = e.getDestNodeId();
+                }
+            }
+
+            PostingMerger merger = mergers.get();
+            for (int i = size - 1; i >= 0; i--) {
+                populate(nodes.get(preorder[i]), merger);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one copy of each distinct index set, so that the nodes whose index sets have the same content share it.
+ * <p>
+ * Many nodes hold the same documents as another one: the leaves of a document all hold its index alone, and a node
+ * often holds the same documents as the node its suffix link points to, or as its only child holding documents.
+ * The sets are looked up by content in a concurrent hash map, so it can be shared by the tasks of a parallel
+ * population. The shared sets must not be modified afterwards.
+ * <p>
+ * The interner counts the nodes which hold each set, so that a repair which replaces the set of a node can release
+ * the old one and the interner only keeps the sets still in the tree.
+ */
+class IndexSetInterner {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final ConcurrentHashMap<Key, Entry> sets = new ConcurrentHashMap<Key, Entry>();
+
+    /**
+     * Returns the set with the same content as <tt>indexSet</tt> which was interned first, <tt>indexSet</tt> itself
+     * if there is none, and counts one more node holding it.
+     */
+    int[] intern(final int[] indexSet) {
+        if (indexSet.length == 0) {
+            return EMPTY;
+        }
+        return sets.compute(new Key(indexSet), (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry(indexSet);
+            }
+            entry.references++;
+            return entry;
+        }).indexSet;
+    }
+
+    /**
+     * Counts one node less holding <tt>indexSet</tt>, which must have been returned by intern, and forgets the set
+     * when no node holds it any more. A set which the interner does not hold is ignored.
+     */
+    void release(final int[] indexSet) {
+        if (indexSet.length == 0) {
+            return;
+        }
+        sets.computeIfPresent(new Key(indexSet), (key, entry) -> {
+            if (entry.indexSet != indexSet) {
+                return entry;
+            }
+            return --entry.references == 0 ? null : entry;
+        });
+    }
+
+    private static final class Entry {
+
+        private final int[] indexSet;
+
+        /**
+         * The number of nodes holding the set, only changed under the lock of the map on its key
+         */
+        private int references;
+
+        Entry(int[] indexSet) {
+            this.indexSet = indexSet;
+        }
+    }
+
+    private static final class Key {
+
+        private final int[] indexSet;
+        private final int hash;
+
+        Key(int[] indexSet) {
+            this.indexSet = indexSet;
+            this.hash = Arrays.hashCode(indexSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(indexSet, ((Key) o).indexSet);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Computes the index sets of the nodes when a query first asks for them instead of all at once.
+ * <p>
+ * The index set of a node is merged from the ones of its children, which are computed first if they are missing,
+ * and is then kept in the node. It is published under the lock of the node through the volatile
+ * <tt>Node.indexSet</tt>, so concurrent queries share it, and two queries computing the same set at once keep
+ * the first one.
+ * <p>
+ * The number of postings kept in the nodes is bounded by <tt>maxPostings</tt>. Beyond it, the sets are evicted
+ * in the order they were computed, except for the ones read since they were last considered, which get a
+ * second chance (CLOCK). An evicted set is computed again from the children the next time it is asked for.
+ * Without a bound, nothing is tracked for eviction. Each entry of the eviction queue holds the set it was queued
+ * with, so that an entry left behind by a set which was invalidated, and maybe computed again since, is
+ * discarded instead of evicting the current one.
+ */
+class LazyIndex {
+
+    private final long maxPostings;
+    /**
+     * Returns the current lengths of the documents, as put reallocates them when the indexes outgrow them
+     */
+    private final Supplier<int[]> documentLengths;
+    private final float minimumRatio;
+
+    private final AtomicLong postingCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<Resident> resident = new ConcurrentLinkedQueue<Resident>();
+    // the size of the queue, which it walks to count
+    private final AtomicInteger residentCount = new AtomicInteger();
+    private final ThreadLocal<PostingMerger> mergers = ThreadLocal.withInitial(PostingMerger::new);
+
+    LazyIndex(long maxPostings, Supplier<int[]> documentLengths, float minimumRatio) {
+        this.maxPostings = maxPostings;
+        this.documentLengths = documentLengths;
+        this.minimumRatio = minimumRatio;
+    }
+
+    /**
+     * Returns the index set of <tt>node</tt>, computing it if it is missing
+     */
+    int[] getIndexSet(Node node) {
+        int[] result = node.indexSet;
+        if (result != null) {
+            node.referenced = true;
+            return result;
+        }
+
+        // computes the missing sets of the subtree bottom-up, the children being pushed above their parent
+        List<Node> stack = new ArrayList<Node>();
+        List<int[]> childSets = new ArrayList<int[]>();
+        stack.add(node);
+        while (!stack.isEmpty()) {
+            Node top = stack.get(stack.size() - 1);
+            int[] indexSet = top.indexSet;
+            if (indexSet == null) {
+                childSets.clear();
+                for (Edge e : top.getEdges().values()) {
+                    int[] childSet = e.getDest().indexSet;
+                    if (childSet == null) {
+                        stack.add(e.getDest());
+                    } else {
+                        childSets.add(childSet);
+                    }
+                }
+                if (childSets.size() < top.getEdges().size()) {
+                    continue;
+                }
+
+                PostingMerger merger = mergers.get();
+                int[] data = top.getNodeData();
+                merger.add(data, 0, data.length);
+                for (int[] childSet : childSets) {
+                    merger.add(childSet, 0, childSet.length);
+                }
+                indexSet = IndexPopulator.cut(merger.merge(), top.getSubstringLength(), documentLengths.get(), minimumRatio);
+                indexSet = publish(top, indexSet);
+            }
+            if (top == node) {
+                result = indexSet;
+            }
+            stack.remove(stack.size() - 1);
+        }
+
+        evict();
+        return result;
+    }
+
+    /**
+     * Sets the index set of <tt>node</tt> unless another thread did it first, and returns the one which was kept
+     */
+    private int[] publish(Node node, int[] indexSet) {
+        synchronized (node) {
+            if (node.indexSet != null) {
+                return node.indexSet;
+            }
+            node.indexSize = indexSet.length;
+            node.indexSet = indexSet;
+        }
+        postingCount.addAndGet(indexSet.length);
+        if (maxPostings != Long.MAX_VALUE) {
+            resident.add(new Resident(node, indexSet));
+            residentCount.incrementAndGet();
+        }
+        return indexSet;
+    }
+
+    /**
+     * Drops the index set of <tt>node</tt>, if it has one
+     */
+    void invalidate(Node node) {
+        synchronized (node) {
+            int[] indexSet = node.indexSet;
+            if (indexSet == null) {
+                return;
+            }
+            node.indexSet = null;
+            node.indexSize = 0;
+            postingCount.addAndGet(-indexSet.length);
+        }
+        // the entry of the set in the queue no longer matches the node, so evict discards it when it reaches it
+    }
+
+    /**
+     * Drops the index set of <tt>node</tt> if it is still <tt>indexSet</tt>
+     */
+    private void invalidate(Node node, int[] indexSet) {
+        synchronized (node) {
+            if (node.indexSet != indexSet) {
+                return;
+            }
+            node.indexSet = null;
+            node.indexSize = 0;
+            postingCount.addAndGet(-indexSet.length);
+        }
+    }
+
+    private void evict() {
+        int attempts = 2 * residentCount.get();
+        while (postingCount.get() > maxPostings && attempts-- > 0) {
+            Resident entry = resident.poll();
+            if (entry == null) {
+                return;
+            }
+            residentCount.decrementAndGet();
+            Node node = entry.node;
+            if (node.indexSet != entry.indexSet) {
+                // the set was invalidated since it was queued, the current one if any has its own entry
+                continue;
+            }
+            if (node.referenced) {
+                node.referenced = false;
+                resident.add(entry);
+                residentCount.incrementAndGet();
+            } else {
+                invalidate(node, entry.indexSet);
+            }
+        }
+    }
+
+    long getPostingCount() {
+        return postingCount.get();
+    }
+
+    /**
+     * An index set waiting in the eviction queue, with the node it was published in
+     */
+    private static final class Resident {
+
+        final Node node;
+        final int[] indexSet;
+
+        Resident(Node node, int[] indexSet) {
+            this.node = node;
+            this.indexSet = indexSet;
+        }
+    }
+}
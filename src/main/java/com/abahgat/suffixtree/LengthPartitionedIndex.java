@@ -0,0 +1,309 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An index of documents which are split by length into separate generalized suffix trees, for similarity queries.
+ * <p>
+ * The lengths are bucketed geometrically: partition 0 holds the empty documents and partition b &gt; 0 the ones
+ * whose length is in [2^(b-1), 2^b). A document of length |d| has a longest common substring of at most
+ * min(|q|, |d|) with a target of length |q|, so its similarity is at most 2 * min(|q|, |d|) / (|q| + |d|):
+ * a query with ratio r only walks the partitions whose lengths can reach r, i.e. roughly
+ * [|q| * r / (2 - r), |q| * (2 - r) / r], and merges their results. For high ratios this leaves out most of
+ * the documents, and with them most of the tree and of the posting lists.
+ * <p>
+ * The documents are added with put and the partitions are populated and frozen together, like a single
+ * GeneralizedSuffixTree: a partition which a put opens after the indices were populated is populated at once.
+ * Each partition numbers its documents densely and maps them back to their indexes, so that its arrays are sized
+ * by the documents it holds rather than by the largest index of the whole index. An index may be repeated as long
+ * as its keys fall in the same partition, so that it is never returned twice.
+ */
+public class LengthPartitionedIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The partitions by length, null until a document falls in them
+     */
+    private final ArrayList<Partition> partitions = new ArrayList<Partition>();
+
+    /**
+     * The index of the last item that was added to the index
+     */
+    private int last = 0;
+
+    /**
+     * The partition of the last item that was added to the index, -1 before the first one
+     */
+    private int lastPartition = -1;
+
+    /**
+     * The flag which shows whether the indices were populated, the partitions created afterwards are populated
+     * as they are created
+     */
+    private boolean populated = false;
+
+    /**
+     * The flag which shows whether the partitions were frozen
+     */
+    private boolean frozen = false;
+
+    /**
+     * Adds the specified <tt>index</tt> under the given <tt>key</tt> to the partition of the length of <tt>key</tt>.
+     *
+     * @param key   the string key that will be added to the index
+     * @param index the value that will be added to the index
+     * @throws IllegalStateException if the indexes are not added in non-decreasing order, if <tt>index</tt> is
+     *                               repeated with a key of another partition or if the index is frozen
+     * @see GeneralizedSuffixTree#put(String, int)
+     */
+    public void put(String key, int index) throws IllegalStateException {
+        if (frozen) {
+            throw new IllegalStateException("The index is frozen, no document can be added to it.");
+        }
+        if (index < last) {
+            throw new IllegalStateException("The input index must not be less than any of the previously inserted ones. Got " + index + ", expected at least " + last);
+        }
+        int partition = partition(key.length());
+        if (index == last && lastPartition >= 0 && partition != lastPartition) {
+            throw new IllegalStateException("The input index " + index + " was added with a key of length in partition " + lastPartition + ", got one of length " + key.length());
+        }
+        while (partitions.size() <= partition) {
+            partitions.add(null);
+        }
+        boolean created = partitions.get(partition) == null;
+        if (created) {
+            partitions.set(partition, new Partition());
+        }
+        partitions.get(partition).put(key, index);
+        if (created && populated) {
+            // the existing partitions repair their indices on the next query, a new one has none to repair
+            partitions.get(partition).tree.populateIndices();
+        }
+        last = index;
+        lastPartition = partition;
+    }
+
+    /**
+     * Returns the partition of the documents of length <tt>length</tt>
+     */
+    static int partition(int length) {
+        return 32 - Integer.numberOfLeadingZeros(length);
+    }
+
+    /**
+     * Returns the upper bound on the similarity of a target of length <tt>targetLength</tt> to the documents of
+     * <tt>partition</tt>: the similarity of the length of the partition which is the closest to the target.
+     */
+    static float maximumSimilarity(int targetLength, int partition) {
+        int shortest = partition == 0 ? 0 : 1 << (partition - 1);
+        int longest = partition == 0 ? 0 : (1 << partition) - 1;
+        if (longest < targetLength) {
+            return (float) 2 * longest / (targetLength + longest);
+        }
+        if (shortest > targetLength) {
+            return (float) 2 * targetLength / (targetLength + shortest);
+        }
+        return 1;
+    }
+
+    /**
+     * Searches for the given document within the partitions.
+     *
+     * @see GeneralizedSuffixTree#search(String)
+     */
+    public Collection<Integer> search(String document) {
+        HashSet<Integer> results = new HashSet<Integer>();
+        // only the documents at least as long as the searched one may contain it
+        for (int partition = partition(document.length()); partition < partitions.size(); partition++) {
+            Partition candidate = partitions.get(partition);
+            if (candidate != null) {
+                for (int local : candidate.tree.search(document)) {
+                    results.add(candidate.indexes[local]);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns documents which are similar to <tt>targetDocument</tt> above the threshold <tt>ratio</tt>,
+     * out of the partitions which may hold such documents.
+     *
+     * @see GeneralizedSuffixTree#getSimilarStringIndexes(String, float)
+     */
+    public HashSet<Integer> getSimilarStringIndexes(String targetDocument, float ratio) {
+        HashSet<Integer> results = new HashSet<Integer>();
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            if (isCandidate(partition, targetDocument, ratio)) {
+                Partition candidate = partitions.get(partition);
+                for (int local : candidate.tree.getSimilarStringIndexArray(targetDocument, ratio)) {
+                    results.add(candidate.indexes[local]);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the documents which are similar to <tt>targetDocument</tt> above the threshold <tt>ratio</tt>
+     * along with their similarity, out of the partitions which may hold such documents.
+     *
+     * @see GeneralizedSuffixTree#getSimilarDocuments(String, float)
+     */
+    public List<SimilarDocument> getSimilarDocuments(String targetDocument, float ratio) {
+        List<SimilarDocument> results = new ArrayList<SimilarDocument>();
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            if (isCandidate(partition, targetDocument, ratio)) {
+                Partition candidate = partitions.get(partition);
+                for (SimilarDocument document : candidate.tree.getSimilarDocuments(targetDocument, ratio)) {
+                    results.add(candidate.toIndex(document));
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean isCandidate(int partition, String targetDocument, float ratio) {
+        return partitions.get(partition) != null && maximumSimilarity(targetDocument.length(), partition) > ratio;
+    }
+
+    /**
+     * Returns the <tt>k</tt> documents which are the most similar to <tt>targetDocument</tt>.
+     * <p>
+     * The partitions are queried from the one with the highest bound on the similarity, and the query stops at
+     * the first partition whose bound is below the k-th best similarity found so far.
+     *
+     * @see GeneralizedSuffixTree#getTopKSimilar(String, int)
+     */
+    public List<SimilarDocument> getTopKSimilar(String targetDocument, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("The number of documents must be positive. Got " + k);
+        }
+
+        List<Integer> order = new ArrayList<Integer>();
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            if (partitions.get(partition) != null) {
+                order.add(partition);
+            }
+        }
+        final int length = targetDocument.length();
+        order.sort((a, b) -> Float.compare(maximumSimilarity(length, b), maximumSimilarity(length, a)));
+
+        PriorityQueue<SimilarDocument> best = new PriorityQueue<SimilarDocument>(Math.min(k, 16), GeneralizedSuffixTree.WORST_FIRST);
+        for (int partition : order) {
+            if (best.size() == k && maximumSimilarity(length, partition) < best.peek().getSimilarity()) {
+                break;
+            }
+            // the local ids are in the order of the indexes, so the ties are broken the same way once mapped
+            Partition candidate = partitions.get(partition);
+            for (SimilarDocument local : candidate.tree.getTopKSimilar(targetDocument, k)) {
+                SimilarDocument document = candidate.toIndex(local);
+                if (best.size() < k) {
+                    best.add(document);
+                } else if (GeneralizedSuffixTree.WORST_FIRST.compare(document, best.peek()) > 0) {
+                    best.poll();
+                    best.add(document);
+                }
+            }
+        }
+
+        List<SimilarDocument> results = new ArrayList<SimilarDocument>(best);
+        results.sort(Collections.reverseOrder(GeneralizedSuffixTree.WORST_FIRST));
+        return results;
+    }
+
+    /**
+     * Populates the indices of every partition.
+     *
+     * @see GeneralizedSuffixTree#populateIndices()
+     */
+    public void populateIndices() {
+        for (Partition partition : partitions) {
+            if (partition != null) {
+                partition.tree.populateIndices();
+            }
+        }
+        populated = true;
+    }
+
+    /**
+     * Freezes every partition, whose indices must be populated.
+     *
+     * @see GeneralizedSuffixTree#freeze()
+     */
+    public void freeze() {
+        for (Partition partition : partitions) {
+            if (partition != null) {
+                partition.tree.freeze();
+                partition.indexes = Arrays.copyOf(partition.indexes, partition.size);
+            }
+        }
+        frozen = true;
+    }
+
+    /**
+     * Returns the tree of <tt>partition</tt>, whose documents are numbered by their local ids
+     */
+    GeneralizedSuffixTree getPartitionTree(int partition) {
+        return partition < partitions.size() && partitions.get(partition) != null ? partitions.get(partition).tree : null;
+    }
+
+    /**
+     * A partition, whose tree numbers the documents densely from 0 in the order of their indexes
+     */
+    private static final class Partition implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+
+        /**
+         * The index of each local id
+         */
+        int[] indexes = new int[4];
+
+        /**
+         * The number of local ids
+         */
+        int size = 0;
+
+        void put(String key, int index) {
+            // a repeated index keeps its local id, as it does in a single tree, put keeps it in one partition
+            boolean added = size == 0 || indexes[size - 1] != index;
+            tree.put(key, added ? size : size - 1);
+            if (added) {
+                if (size == indexes.length) {
+                    indexes = Arrays.copyOf(indexes, 2 * size);
+                }
+                indexes[size++] = index;
+            }
+        }
+
+        SimilarDocument toIndex(SimilarDocument document) {
+            return new SimilarDocument(indexes[document.getIndex()], document.getSimilarity());
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.abahgat.suffixtree;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 
@@ -34,10 +35,25 @@ public class Node implements Comparable<Node>, Serializable {
      */
     private static final long serialVersionUID = 1L;
 
-    public int[] indexSet;
+    public volatile int[] indexSet;
 
     public int indexSize;
 
+    /**
+     * The index set of this node when it is dense enough to be stored as a bitmap, in which case indexSet is null
+     */
+    IndexBitmap indexBitmap;
+
+    /**
+     * Whether the index set of this node is out of date because documents were added after it was populated
+     */
+    transient boolean dirty = false;
+
+    /**
+     * Whether the index set of this node was read since the lazy index last considered evicting it
+     */
+    transient boolean referenced = false;
+
     //public String text;
     private int substringLength = 0;
     private Edge sourceEdge;
@@ -71,7 +87,7 @@ public class Node implements Comparable<Node>, Serializable {
     /**
      * The set of edges starting from this node
      */
-    private final Map<Character, Edge> edges;
+    private final EdgeBag edges;
     /**
      * The suffix link as described in Ukkonen's paper.
      * if str is the string denoted by the path from the root to this, this.suffix
@@ -119,9 +135,9 @@ public class Node implements Comparable<Node>, Serializable {
 
         addIndex(index);
 
-        // add this reference to all the suffixes as well
+        // add this reference to all the suffixes as well, the root does not hold references
         Node iter = this.suffix;
-        while (iter != null) {
+        while (iter != null && iter.substringLength > 0) {
             if (iter.contains(index)) {
                 break;
             }
@@ -204,8 +220,8 @@ public class Node implements Comparable<Node>, Serializable {
         Edge sEdge = this.sourceEdge;
         int index = text.length - 1;
         while (sEdge != null) {
-            for (int i = sEdge.getLabel().length() - 1; i >= 0; i--) {
-                text[index] = sEdge.getLabel().charAt(i);
+            for (int i = sEdge.getLabelLength() - 1; i >= 0; i--) {
+                text[index] = sEdge.getLabelChar(i);
                 index--;
             }
             sEdge = sEdge.getSource().sourceEdge;
@@ -234,7 +250,16 @@ public class Node implements Comparable<Node>, Serializable {
         return null;
     }
 
+    /**
+     * Returns the sorted indexes of the documents which contain the string of this node. The array may be shared
+     * with other nodes whose index sets are the same, so it must not be modified. It is decoded from the bitmap
+     * of the node if the index set is stored as one.
+     */
     public int[] getIndexSet() {
+        IndexBitmap bitmap = indexBitmap;
+        if (bitmap != null) {
+            return bitmap.toArray();
+        }
         return indexSet;
     }
 
@@ -259,4 +284,37 @@ public class Node implements Comparable<Node>, Serializable {
 
     }
 
+    /**
+     * Returns the distinct indexes associated to this node and its descendants like fetchIndexSet, sorted,
+     * without boxing them.
+     */
+    public int[] fetchIndexArray() {
+        int[] results = new int[16];
+        int size = 0;
+
+        ArrayList<Node> childNodes = new ArrayList<Node>();
+        childNodes.add(this);
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node childNode = childNodes.get(i);
+            for (Edge e : childNode.getEdges().values()) {
+                childNodes.add(e.getDest());
+            }
+
+            if (results.length - size < childNode.data.length) {
+                results = Arrays.copyOf(results, Math.max(2 * results.length, size + childNode.data.length));
+            }
+            System.arraycopy(childNode.data, 0, results, size, childNode.data.length);
+            size += childNode.data.length;
+        }
+
+        Arrays.sort(results, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || results[distinct - 1] != results[i]) {
+                results[distinct++] = results[i];
+            }
+        }
+        return Arrays.copyOf(results, distinct);
+    }
+
 }
@@ -0,0 +1,159 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Merges sorted posting lists into one sorted list without duplicates.
+ * <p>
+ * The lists to merge are added one by one and merged with a k-way merge over a binary heap of cursors.
+ * All the buffers are reused from one merge to the next, so that the only allocation of a merge is its result.
+ * A merger is not thread-safe.
+ */
+class PostingMerger {
+
+    /**
+     * The number of lists up to which the smallest head is found by a linear scan instead of the heap
+     */
+    private static final int HEAP_THRESHOLD = 4;
+
+    private int[][] lists = new int[8][];
+    private int[] ends = new int[8];
+    private int[] positions = new int[8];
+    private int count = 0;
+
+    /**
+     * The heap of the lists which still have elements, ordered by their current element
+     */
+    private int[] heap = new int[8];
+
+    private int[] output = new int[16];
+
+    /**
+     * Adds the sorted list[start, end) to the lists to merge.
+     */
+    void add(int[] list, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        if (count == lists.length) {
+            lists = Arrays.copyOf(lists, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            positions = Arrays.copyOf(positions, count * 2);
+            heap = Arrays.copyOf(heap, count * 2);
+        }
+        lists[count] = list;
+        positions[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Merges the lists added since the last merge and returns the result in an array of its own.
+     */
+    int[] merge() {
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += ends[i] - positions[i];
+        }
+        if (output.length < total) {
+            output = new int[Math.max(total, output.length * 2)];
+        }
+
+        int size;
+        if (count == 1) {
+            size = ends[0] - positions[0];
+            System.arraycopy(lists[0], positions[0], output, 0, size);
+        } else if (count <= HEAP_THRESHOLD) {
+            size = mergeLinear();
+        } else {
+            size = mergeHeap();
+        }
+
+        Arrays.fill(lists, 0, count, null);
+        count = 0;
+        return Arrays.copyOf(output, size);
+    }
+
+    private int mergeLinear() {
+        int size = 0;
+        while (true) {
+            int smallest = -1;
+            for (int i = 0; i < count; i++) {
+                if (positions[i] < ends[i] && (smallest == -1 || lists[i][positions[i]] < lists[smallest][positions[smallest]])) {
+                    smallest = i;
+                }
+            }
+            if (smallest == -1) {
+                return size;
+            }
+
+            int value = lists[smallest][positions[smallest]++];
+            if (size == 0 || output[size - 1] != value) {
+                output[size++] = value;
+            }
+        }
+    }
+
+    private int mergeHeap() {
+        int heapSize = count;
+        for (int i = 0; i < count; i++) {
+            heap[i] = i;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i, heapSize);
+        }
+
+        int size = 0;
+        while (heapSize > 0) {
+            int top = heap[0];
+            int value = lists[top][positions[top]++];
+            if (size == 0 || output[size - 1] != value) {
+                output[size++] = value;
+            }
+
+            if (positions[top] == ends[top]) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(0, heapSize);
+        }
+        return size;
+    }
+
+    private int head(int list) {
+        return lists[list][positions[list]];
+    }
+
+    private void siftDown(int index, int heapSize) {
+        int list = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && head(heap[child + 1]) < head(heap[child])) {
+                child++;
+            }
+            if (head(heap[child]) >= head(list)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = list;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+/**
+ * The scratch space of a query: the longest common substring found so far with each document, and the nodes
+ * visited so far with the length they were visited with, in arrays indexed by document index and node id
+ * which are reused from one query to the next.
+ * <p>
+ * An entry belongs to the current query only if its stamp is the current epoch, so a query starts by
+ * incrementing the epoch instead of clearing the arrays. The documents met by the query are also listed,
+ * so that they can be enumerated without scanning the arrays. A scratch is not thread-safe.
+ * <p>
+ * The node arrays take 8 bytes per node of the largest tree queried. Beyond <tt>RETAINED_NODES</tt> nodes, they are
+ * only softly reachable between two walks, so that the scratch of a thread does not pin the memory of a query on
+ * a large tree for the life of the thread, while the next walk reuses them as long as they are not reclaimed.
+ * <p>
+ * A query which runs a callback of the caller holds its scratch meanwhile, so that a query run by the callback,
+ * on any tree, takes a nested scratch instead of starting over the one of the outer query.
+ */
+class QueryScratch {
+
+    private int[] stamps = new int[16];
+    private int[] lengths = new int[16];
+    private int epoch = 0;
+
+    private int[] documents = new int[16];
+    private int size = 0;
+
+    /**
+     * The number of nodes beyond which the node arrays are released by releaseNodes
+     */
+    static final int RETAINED_NODES = 1 << 18;
+
+    private int[] nodeStamps = new int[16];
+    private int[] nodeLengths = new int[16];
+    /**
+     * The node arrays released by the last walk, the strong references being null meanwhile
+     */
+    private SoftReference<int[][]> releasedNodes = null;
+
+    private boolean held = false;
+    private QueryScratch nested = null;
+
+    /**
+     * Returns this scratch, or the first of the nested ones which is not held by a query
+     */
+    QueryScratch available() {
+        QueryScratch scratch = this;
+        while (scratch.held) {
+            if (scratch.nested == null) {
+                scratch.nested = new QueryScratch();
+            }
+            scratch = scratch.nested;
+        }
+        return scratch;
+    }
+
+    /**
+     * Keeps the scratch for the current query while it runs a callback, until release is called
+     */
+    void hold() {
+        held = true;
+    }
+
+    void release() {
+        held = false;
+    }
+
+    /**
+     * Starts a query over documents whose indexes are at most <tt>maxIndex</tt>, in a tree of <tt>nodeCount</tt> nodes
+     */
+    void start(int maxIndex, int nodeCount) {
+        if (stamps.length <= maxIndex) {
+            int capacity = Math.max(maxIndex + 1, stamps.length * 2);
+            stamps = Arrays.copyOf(stamps, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        if (nodeStamps == null) {
+            int[][] released = releasedNodes.get();
+            releasedNodes = null;
+            nodeStamps = released != null ? released[0] : new int[16];
+            nodeLengths = released != null ? released[1] : new int[16];
+        }
+        if (nodeStamps.length < nodeCount) {
+            int capacity = Math.max(nodeCount, nodeStamps.length * 2);
+            nodeStamps = Arrays.copyOf(nodeStamps, capacity);
+            nodeLengths = Arrays.copyOf(nodeLengths, capacity);
+        }
+        epoch++;
+        if (epoch == 0) {
+            // the stamps of a previous round of epochs must not be mistaken for the current one
+            Arrays.fill(stamps, 0);
+            Arrays.fill(nodeStamps, 0);
+            epoch = 1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Marks <tt>node</tt> as visited with a common substring of length <tt>length</tt>, unless it was visited
+     * with a longer one.
+     *
+     * @return the length the node was visited with before by the current query, -1 if it was not visited
+     */
+    int visit(int node, int length) {
+        if (nodeStamps[node] != epoch) {
+            nodeStamps[node] = epoch;
+            nodeLengths[node] = length;
+            return -1;
+        }
+        int previous = nodeLengths[node];
+        if (length > previous) {
+            nodeLengths[node] = length;
+        }
+        return previous;
+    }
+
+    /**
+     * Ends the walk over the nodes of the current query: the node arrays are released if they are larger than
+     * <tt>RETAINED_NODES</tt>, until the next call to start. The documents met stay readable.
+     */
+    void releaseNodes() {
+        if (nodeStamps != null && nodeStamps.length > RETAINED_NODES) {
+            releasedNodes = new SoftReference<int[][]>(new int[][]{nodeStamps, nodeLengths});
+            nodeStamps = null;
+            nodeLengths = null;
+        }
+    }
+
+    /**
+     * Returns the number of nodes the node arrays can hold without growing, 0 while they are released
+     */
+    int getNodeCapacity() {
+        return nodeStamps == null ? 0 : nodeStamps.length;
+    }
+
+    /**
+     * Records a common substring of length <tt>length</tt> with the document <tt>index</tt>.
+     *
+     * @return true if the document had not been met yet by the current query
+     */
+    boolean record(int index, int length) {
+        if (stamps[index] == epoch) {
+            if (length > lengths[index]) {
+                lengths[index] = length;
+            }
+            return false;
+        }
+        stamps[index] = epoch;
+        lengths[index] = length;
+        if (size == documents.length) {
+            documents = Arrays.copyOf(documents, size * 2);
+        }
+        documents[size++] = index;
+        return true;
+    }
+
+    /**
+     * Returns the number of documents met by the current query
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the i-th document met by the current query
+     */
+    int getDocument(int i) {
+        return documents[i];
+    }
+
+    /**
+     * Returns the longest common substring recorded for the document <tt>index</tt> by the current query
+     */
+    int getLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Returns the longest common substring recorded for the document <tt>index</tt> by the current query,
+     * 0 if the document was not met yet
+     */
+    int getRecordedLength(int index) {
+        return stamps[index] == epoch ? lengths[index] : 0;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+/**
+ * A document returned by a similarity query, along with its similarity to the target:
+ * 2*lcSubstring(target, document) / (|target| + |document|)
+ *
+ * @see GeneralizedSuffixTree#getTopKSimilar(String, int)
+ */
+public final class SimilarDocument {
+
+    private final int index;
+    private final float similarity;
+
+    public SimilarDocument(int index, float similarity) {
+        this.index = index;
+        this.similarity = similarity;
+    }
+
+    /**
+     * @return the index the document was added to the tree with
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the similarity of the document to the target of the query
+     */
+    public float getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SimilarDocument)) {
+            return false;
+        }
+        SimilarDocument other = (SimilarDocument) o;
+        return index == other.index && Float.compare(similarity, other.similarity) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * index + Float.floatToIntBits(similarity);
+    }
+
+    @Override
+    public String toString() {
+        return index + ":" + similarity;
+    }
+}
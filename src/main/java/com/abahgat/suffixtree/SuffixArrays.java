@@ -0,0 +1,208 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Suffix array construction by induced sorting (SA-IS), based on Nong, Zhang and Chan's paper
+ * "Two Efficient Algorithms for Linear Time Suffix Array Construction", and the longest common
+ * prefix array of Kasai et al.
+ * <p>
+ * The text is an int[] whose symbols are in [0, upper], so that any number of distinct separators
+ * can be used to build the suffix array of several documents at once.
+ */
+class SuffixArrays {
+
+    private SuffixArrays() {
+    }
+
+    /**
+     * Builds the suffix array of <tt>text</tt> in O(n + upper) time.
+     *
+     * @param text  the text, every symbol must be in [0, upper]
+     * @param upper the largest symbol which may appear in the text
+     * @return the starting positions of the suffixes of <tt>text</tt> in lexicographic order
+     */
+    static int[] suffixArray(int[] text, int upper) {
+        int n = text.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        if (n == 1) {
+            return new int[]{0};
+        }
+        if (n == 2) {
+            return text[0] < text[1] ? new int[]{0, 1} : new int[]{1, 0};
+        }
+
+        int[] sa = new int[n];
+        // ls[i] is true if the suffix starting at i is an S-type suffix
+        boolean[] ls = new boolean[n];
+        for (int i = n - 2; i >= 0; i--) {
+            ls[i] = text[i] == text[i + 1] ? ls[i + 1] : text[i] < text[i + 1];
+        }
+
+        // bucket boundaries: sumL[c] is the start of bucket c, sumS[c] is the start of its S part
+        int[] sumL = new int[upper + 2];
+        int[] sumS = new int[upper + 2];
+        for (int i = 0; i < n; i++) {
+            if (!ls[i]) {
+                sumS[text[i]]++;
+            } else {
+                sumL[text[i] + 1]++;
+            }
+        }
+        for (int i = 0; i <= upper; i++) {
+            sumS[i] += sumL[i];
+            sumL[i + 1] += sumS[i];
+        }
+
+        int[] lmsMap = new int[n + 1];
+        Arrays.fill(lmsMap, -1);
+        int m = 0;
+        for (int i = 1; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lmsMap[i] = m++;
+            }
+        }
+        int[] lms = new int[m];
+        m = 0;
+        for (int i = 1; i < n; i++) {
+            if (!ls[i - 1] && ls[i]) {
+                lms[m++] = i;
+            }
+        }
+
+        int[] buffer = new int[upper + 2];
+        induce(text, upper, sa, ls, sumL, sumS, lms, buffer);
+
+        if (m > 0) {
+            int[] sortedLms = new int[m];
+            int count = 0;
+            for (int v : sa) {
+                if (lmsMap[v] != -1) {
+                    sortedLms[count++] = v;
+                }
+            }
+
+            // name the LMS substrings and sort them recursively
+            int[] reduced = new int[m];
+            int reducedUpper = 0;
+            reduced[lmsMap[sortedLms[0]]] = 0;
+            for (int i = 1; i < m; i++) {
+                int l = sortedLms[i - 1];
+                int r = sortedLms[i];
+                int endL = (lmsMap[l] + 1 < m) ? lms[lmsMap[l] + 1] : n;
+                int endR = (lmsMap[r] + 1 < m) ? lms[lmsMap[r] + 1] : n;
+                boolean same = true;
+                if (endL - l != endR - r) {
+                    same = false;
+                } else {
+                    while (l < endL) {
+                        if (text[l] != text[r]) {
+                            break;
+                        }
+                        l++;
+                        r++;
+                    }
+                    if (l == n || text[l] != text[r]) {
+                        same = false;
+                    }
+                }
+                if (!same) {
+                    reducedUpper++;
+                }
+                reduced[lmsMap[sortedLms[i]]] = reducedUpper;
+            }
+
+            int[] reducedSa = suffixArray(reduced, reducedUpper);
+            for (int i = 0; i < m; i++) {
+                sortedLms[i] = lms[reducedSa[i]];
+            }
+            induce(text, upper, sa, ls, sumL, sumS, sortedLms, buffer);
+        }
+        return sa;
+    }
+
+    /**
+     * Places the given LMS suffixes at the end of their buckets and induces the order of the L-type
+     * and then of the S-type suffixes from them.
+     */
+    private static void induce(int[] text, int upper, int[] sa, boolean[] ls, int[] sumL, int[] sumS, int[] lms, int[] buffer) {
+        int n = text.length;
+        Arrays.fill(sa, -1);
+
+        System.arraycopy(sumS, 0, buffer, 0, upper + 2);
+        for (int d : lms) {
+            if (d == n) {
+                continue;
+            }
+            sa[buffer[text[d]]++] = d;
+        }
+
+        System.arraycopy(sumL, 0, buffer, 0, upper + 2);
+        sa[buffer[text[n - 1]]++] = n - 1;
+        for (int i = 0; i < n; i++) {
+            int v = sa[i];
+            if (v >= 1 && !ls[v - 1]) {
+                sa[buffer[text[v - 1]]++] = v - 1;
+            }
+        }
+
+        System.arraycopy(sumL, 0, buffer, 0, upper + 2);
+        for (int i = n - 1; i >= 0; i--) {
+            int v = sa[i];
+            if (v >= 1 && ls[v - 1]) {
+                sa[--buffer[text[v - 1] + 1]] = v - 1;
+            }
+        }
+    }
+
+    /**
+     * Builds the longest common prefix array of <tt>text</tt> in O(n) time.
+     *
+     * @param text the text
+     * @param sa   the suffix array of <tt>text</tt>
+     * @return an array whose i-th element is the length of the longest common prefix of the
+     * suffixes starting at sa[i - 1] and sa[i], the first element is 0
+     */
+    static int[] lcp(int[] text, int[] sa) {
+        int n = text.length;
+        int[] rank = new int[n];
+        for (int i = 0; i < n; i++) {
+            rank[sa[i]] = i;
+        }
+
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (h > 0) {
+                h--;
+            }
+            if (rank[i] == 0) {
+                h = 0;
+                continue;
+            }
+            int j = sa[rank[i] - 1];
+            while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+                h++;
+            }
+            lcp[rank[i]] = h;
+        }
+        return lcp;
+    }
+}
@@ -0,0 +1,106 @@
+package com.abahgat.suffixtree;
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Read-only access to a suffix tree whose indices are populated, used by the queries of GeneralizedSuffixTree
+ * so that they run the same way on the node objects and on the frozen tree.
+ * <p>
+ * Nodes are identified by their position in the breadth-first order of the tree, the root being 0.
+ * The posting list of a node, i.e. the indexes of the documents which contain its string, is the range
+ * [getPostingStart, getPostingEnd) of the array returned by getPostings. That array may be a buffer of the view,
+ * valid until the postings of another node are asked for, so getPostingEnd is called before getPostings.
+ */
+interface SuffixTreeView {
+
+    /**
+     * The id of the root
+     */
+    int ROOT = 0;
+
+    /**
+     * The id used when there is no such node
+     */
+    int NONE = -1;
+
+    /**
+     * Returns the number of nodes, whose ids are [0, size())
+     */
+    int size();
+
+    /**
+     * Returns the id of the node (if present) that corresponds to the given string, NONE otherwise.
+     *
+     * @see GeneralizedSuffixTree#searchNode(String)
+     */
+    int searchNode(String word);
+
+    /**
+     * Returns the child of <tt>node</tt> whose label starts with <tt>c</tt>, NONE if there is none
+     */
+    int getChild(int node, char c);
+
+    /**
+     * Returns the length of the label of the edge which enters <tt>node</tt>, which must not be the root
+     */
+    int getLabelLength(int node);
+
+    /**
+     * Returns the char at <tt>index</tt> in the label of the edge which enters <tt>node</tt>
+     */
+    char getLabelChar(int node, int index);
+
+    /**
+     * Returns the parent of <tt>node</tt>, NONE for the root
+     */
+    int getParent(int node);
+
+    /**
+     * Returns the nearest ancestor of <tt>node</tt> which has more postings than <tt>node</tt>, NONE if there is none.
+     * The ancestors in between have the same postings as <tt>node</tt>, as a posting list contains the ones of
+     * the children, so a walk towards the root which records the documents of <tt>node</tt> can jump over them.
+     */
+    int getContributingAncestor(int node);
+
+    /**
+     * Returns the suffix link of <tt>node</tt>, NONE if it has none
+     */
+    int getSuffix(int node);
+
+    /**
+     * Returns the length of the string of <tt>node</tt>
+     */
+    int getSubstringLength(int node);
+
+    int[] getPostings(int node);
+
+    /**
+     * Returns the bitmap the posting list of <tt>node</tt> is stored as, null if it is stored as an array.
+     * The postings of a node with a bitmap can still be read through getPostings, which decodes it.
+     */
+    IndexBitmap getPostingBitmap(int node);
+
+    int getPostingStart(int node);
+
+    int getPostingEnd(int node);
+
+    /**
+     * Returns an end of the posting list of <tt>node</tt> such that the documents after it are longer than
+     * <tt>maximumLength</tt>. The postings before it may still be longer when the posting lists are not
+     * sorted by document length, in which case this is getPostingEnd(node).
+     */
+    int getPostingEnd(int node, int maximumLength);
+}
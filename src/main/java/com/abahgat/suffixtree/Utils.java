@@ -69,9 +69,19 @@ public class Utils {
      * @return true if the similarity s1 and s2 are above ratio, false otherwise
      */
     public static boolean areStringsSimilar(String s1, String s2, float ratio) {
+        return getSimilarity(s1, s2) > ratio;
+    }
+
+    /**
+     * Returns the similarity of two given strings, calculated with: 2*lCSubstring(s1,s2)/ |s1| + |s2|
+     *
+     * @param s1 is the first string
+     * @param s2 is the second string
+     * @return the similarity of s1 and s2
+     */
+    public static float getSimilarity(String s1, String s2) {
         int lCSubstringLength = getLongestCommonSubstringLength(s1, s2);
-        float similarity = ((float) 2 * lCSubstringLength) / (s1.length() + s2.length());
-        return similarity > ratio;
+        return ((float) 2 * lCSubstringLength) / (s1.length() + s2.length());
     }
 
     private static int getLongestCommonSubstringLength(String s, String t) {
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class CompressedPostingsTest extends TestCase {
+
+    public void testDecode() {
+        Random random = new Random(13);
+        for (int trial = 0; trial < 50; trial++) {
+            // sparse indexes, so that some deltas take several bytes
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            int documents = 1 + random.nextInt(60);
+            int[] documentLengths = new int[1000 * documents];
+            for (int i = 0; i < documents; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(4)));
+                }
+                int index = random.nextInt(1000) + 1000 * i;
+                in.put(document.toString(), index);
+                documentLengths[index] = length;
+            }
+            in.populateIndices();
+
+            List<Node> nodes = in.getNodes();
+            CompressedPostings postings = new CompressedPostings(nodes, documentLengths);
+            CompressedPostings.Decoder decoder = postings.new Decoder();
+            for (int i = 0; i < nodes.size(); i++) {
+                int[] indexSet = nodes.get(i).getIndexSet();
+                int count = decoder.decode(i, Integer.MAX_VALUE);
+                int[] decoded = Arrays.copyOf(decoder.getResults(), count);
+                // the long lists are grouped by the bucket of the document lengths
+                for (int j = 1; j < count && count >= CompressedPostings.GROUPED_SIZE; j++) {
+                    assertTrue(LengthPartitionedIndex.partition(documentLengths[decoded[j - 1]])
+                            <= LengthPartitionedIndex.partition(documentLengths[decoded[j]]));
+                }
+                Arrays.sort(decoded);
+                assertTrue(nodes.get(i).getText(), Arrays.equals(indexSet, decoded));
+
+                // only the documents short enough are decoded
+                int maximumLength = random.nextInt(20);
+                int expected = 0;
+                for (int index : indexSet) {
+                    if (documentLengths[index] <= maximumLength) {
+                        expected++;
+                    }
+                }
+                count = decoder.decode(i, maximumLength);
+                assertEquals(expected, count);
+                for (int j = 0; j < count; j++) {
+                    assertTrue(documentLengths[decoder.getResults()[j]] <= maximumLength);
+                }
+            }
+        }
+    }
+
+    public void testSpreadLengths() {
+        Random random = new Random(19);
+        for (int spread : new int[]{1, 50, 2000}) {
+            List<String> documents = new ArrayList<String>();
+            int[] documentLengths = new int[400];
+            for (int i = 0; i < documentLengths.length; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = 20 + random.nextInt(spread);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(4)));
+                }
+                documents.add(document.toString());
+                documentLengths[i] = length;
+            }
+            List<Node> nodes = GeneralizedSuffixTree.bulkLoad(documents).getNodes();
+            long postings = 0;
+            for (Node node : nodes) {
+                postings += node.indexSize;
+            }
+            CompressedPostings compressed = new CompressedPostings(nodes, documentLengths);
+            // the groups by length must not outweigh the deltas however spread the lengths are
+            assertTrue(spread + ": " + compressed.size() + " bytes for " + postings + " postings",
+                    compressed.size() < 2 * postings);
+        }
+    }
+}
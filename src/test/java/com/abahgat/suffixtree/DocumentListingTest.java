@@ -0,0 +1,57 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class DocumentListingTest extends TestCase {
+
+    public void testList() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 50; trial++) {
+            // from a handful of indexes to several blocks of the sparse table
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            int documents = 1 + random.nextInt(60);
+            for (int i = 0; i < documents; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(4)));
+                }
+                in.put(document.toString(), i / 2);
+            }
+            in.populateIndices();
+
+            List<Node> nodes = in.getNodes();
+            DocumentListing listing = new DocumentListing(nodes);
+            DocumentListing.Lister lister = listing.new Lister();
+            int suffixes = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                suffixes += nodes.get(i).getNodeData().length;
+
+                int count = lister.list(i);
+                int[] listed = Arrays.copyOf(lister.getResults(), count);
+                Arrays.sort(listed);
+                assertTrue(nodes.get(i).getText(), Arrays.equals(nodes.get(i).getIndexSet(), listed));
+            }
+            assertEquals(suffixes, listing.size());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares EdgeBag with the LegacyEdgeBag it replaced, for building a node with the given fanout
+ * and for looking up every child of it. The legacy lookups go through the Map interface, as Node did.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EdgeBagBenchmark {
+
+    @Param({"1", "4", "16", "36", "64"})
+    private int fanout;
+
+    private char[] keys;
+    private Edge edge;
+    private EdgeBag bag;
+    private Map<Character, Edge> legacyBag;
+
+    @Setup
+    public void setUp() {
+        keys = new char[fanout];
+        for (int i = 0; i < fanout; i++) {
+            keys[i] = (char) ('0' + i);
+        }
+        Random random = new Random(42);
+        for (int i = fanout - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            char swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+
+        CharArena arena = new CharArena();
+        edge = new Edge(arena, arena.append("label"), "label".length(), null, null);
+        bag = buildEdgeBag();
+        legacyBag = buildLegacyEdgeBag();
+    }
+
+    @Benchmark
+    public EdgeBag buildEdgeBag() {
+        EdgeBag result = new EdgeBag();
+        for (char c : keys) {
+            result.put(c, edge);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public LegacyEdgeBag buildLegacyEdgeBag() {
+        LegacyEdgeBag result = new LegacyEdgeBag();
+        for (char c : keys) {
+            result.put(c, edge);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void getEdgeBag(Blackhole blackhole) {
+        for (char c : keys) {
+            blackhole.consume(bag.get(c));
+        }
+    }
+
+    @Benchmark
+    public void getLegacyEdgeBag(Blackhole blackhole) {
+        for (char c : keys) {
+            blackhole.consume(legacyBag.get(c));
+        }
+    }
+}
@@ -21,11 +21,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import static com.sun.xml.internal.ws.dump.LoggingDumpTube.Position.Before;
 import static org.junit.Assert.*;
 
 public class EdgeBagTest {
 
+    private final CharArena arena = new CharArena();
+
     public EdgeBagTest() {
     }
 
@@ -49,10 +50,10 @@ public class EdgeBagTest {
     @Test
     public void testPut() {
         EdgeBag bag = new EdgeBag();
-        Edge e1 = new Edge("asd", null, null);
-        Edge e2 = new Edge("errimo", null, null);
-        Edge e3 = new Edge("foo", null, null);
-        Edge e4 = new Edge("bar", null, null);
+        Edge e1 = edge("asd");
+        Edge e2 = edge("errimo");
+        Edge e3 = edge("foo");
+        Edge e4 = edge("bar");
         bag.put('a', e1);
         bag.put('e', e2);
         bag.put('f', e3);
@@ -62,6 +63,7 @@ public class EdgeBagTest {
         assertTrue(bag.get('e').equals(e2));
         assertTrue(bag.get('f').equals(e3));
         assertTrue(bag.get('b').equals(e4));
+        assertNull(bag.get('c'));
     }
 
     @Test
@@ -75,8 +77,49 @@ public class EdgeBagTest {
         }
     }
 
+    @Test
+    public void testPutMany() {
+        // goes through the inline, linear, binary searched and direct-indexed representations
+        EdgeBag bag = new EdgeBag();
+        String chars = "q7wertyuiopasdfghjklzxcvbnm012345689";
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            assertNull(bag.put(c, edge(String.valueOf(c))));
+            assertEquals(i + 1, bag.size());
+            for (int j = 0; j <= i; j++) {
+                assertEquals(String.valueOf(chars.charAt(j)), bag.get(chars.charAt(j)).getLabel());
+            }
+            assertNull(bag.get('A'));
+            assertNull(bag.get('~'));
+        }
+
+        char previous = 0;
+        for (Edge e : bag.values()) {
+            assertTrue(previous < e.getLabelChar(0));
+            previous = e.getLabelChar(0);
+        }
+
+        Edge replacement = edge("q");
+        assertNotNull(bag.put('q', replacement));
+        assertSame(replacement, bag.get('q'));
+        assertEquals(chars.length(), bag.size());
+
+        // a sparse range of chars does not use the table
+        Edge far = edge("\u4e00");
+        bag.put('\u4e00', far);
+        assertSame(far, bag.get('\u4e00'));
+        assertSame(replacement, bag.get('q'));
+        assertNull(bag.get('\u4dff'));
+    }
+
     public void testSort() {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns an edge whose label is appended to the arena shared by the edges of the test, as in a tree
+     */
+    private Edge edge(String label) {
+        return new Edge(arena, arena.append(label), label.length(), null, null);
+    }
+}
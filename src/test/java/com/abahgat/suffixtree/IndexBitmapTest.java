@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class IndexBitmapTest extends TestCase {
+
+    public void testRoundTrip() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 200; trial++) {
+            TreeSet<Integer> indexes = new TreeSet<Integer>();
+            int offset = random.nextInt(1000);
+            for (int i = 1 + random.nextInt(300); i > 0; i--) {
+                indexes.add(offset + random.nextInt(1 + random.nextInt(2000)));
+            }
+            int[] indexSet = new int[indexes.size()];
+            int size = 0;
+            for (int index : indexes) {
+                indexSet[size++] = index;
+            }
+
+            IndexBitmap bitmap = IndexBitmap.of(indexSet);
+            assertEquals(indexSet.length, bitmap.size());
+            assertEquals(indexSet[0], bitmap.first());
+            assertEquals(indexSet[indexSet.length - 1], bitmap.last());
+            assertTrue(Arrays.equals(indexSet, bitmap.toArray()));
+
+            // OR-ed into a wider range, then trimmed back
+            int firstWord = bitmap.first() / 64 - random.nextInt(3);
+            long[] words = new long[bitmap.last() / 64 - firstWord + 1 + random.nextInt(3)];
+            bitmap.orInto(words, firstWord);
+            IndexBitmap copy = IndexBitmap.of(firstWord, words);
+            assertTrue(Arrays.equals(indexSet, copy.toArray()));
+            assertEquals(bitmap.first(), copy.first());
+            assertEquals(bitmap.last(), copy.last());
+        }
+    }
+
+    public void testIsDense() {
+        assertFalse(IndexBitmap.isDense(IndexBitmap.MINIMUM_SIZE - 1, 0, IndexBitmap.MINIMUM_SIZE - 2));
+        assertTrue(IndexBitmap.isDense(IndexBitmap.MINIMUM_SIZE, 0, IndexBitmap.MINIMUM_SIZE - 1));
+        // a bitmap of 64 words takes as much memory as 128 ints
+        assertFalse(IndexBitmap.isDense(128, 0, 64 * 64 - 1));
+        assertTrue(IndexBitmap.isDense(129, 0, 64 * 64 - 1));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LazyIndexTest extends TestCase {
+
+    public void testCap() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 50; trial++) {
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            int documents = 1 + random.nextInt(30);
+            int[] documentLengths = new int[documents];
+            for (int i = 0; i < documents; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(4)));
+                }
+                in.put(document.toString(), i);
+                documentLengths[i] = length;
+            }
+            in.populateIndices();
+
+            List<Node> nodes = in.getNodes();
+            int[][] expected = new int[nodes.size()][];
+            for (int i = 0; i < nodes.size(); i++) {
+                expected[i] = nodes.get(i).indexSet;
+                nodes.get(i).indexSet = null;
+            }
+
+            long maxPostings = random.nextInt(4 * documents);
+            LazyIndex index = new LazyIndex(maxPostings, () -> documentLengths, 0);
+            for (int query = 0; query < 3 * nodes.size(); query++) {
+                int i = random.nextInt(nodes.size());
+                assertTrue(Arrays.equals(expected[i], index.getIndexSet(nodes.get(i))));
+                assertTrue(index.getPostingCount() <= maxPostings);
+            }
+
+            // the sets kept in the nodes are the ones counted
+            long postings = 0;
+            for (Node node : nodes) {
+                if (node.indexSet != null) {
+                    postings += node.indexSet.length;
+                }
+            }
+            assertEquals(postings, index.getPostingCount());
+        }
+    }
+
+    public void testRepublishedSetIsNotEvictedByItsStaleEntry() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        String[] documents = {"banana", "bandana", "cabana"};
+        int[] documentLengths = new int[documents.length];
+        for (int i = 0; i < documents.length; i++) {
+            in.put(documents[i], i);
+            documentLengths[i] = documents[i].length();
+        }
+        in.populateIndices();
+
+        // two leaves, whose sets are computed without touching the other nodes
+        List<Node> nodes = in.getNodes();
+        Node first = null;
+        Node second = null;
+        for (Node node : nodes) {
+            if (node.getEdges().isEmpty() && node.getNodeData().length > 0) {
+                if (first == null) {
+                    first = node;
+                } else if (second == null) {
+                    second = node;
+                }
+            }
+        }
+        int[] firstSet = first.indexSet;
+        int[] secondSet = second.indexSet;
+        first.indexSet = null;
+        second.indexSet = null;
+
+        LazyIndex index = new LazyIndex(firstSet.length, () -> documentLengths, 0);
+        // query, put (which invalidates the changed sets) and query again: the set is queued twice
+        assertTrue(Arrays.equals(firstSet, index.getIndexSet(first)));
+        index.invalidate(first);
+        assertTrue(Arrays.equals(firstSet, index.getIndexSet(first)));
+        assertTrue(Arrays.equals(firstSet, index.getIndexSet(first)));
+
+        // going over the cap evicts the unreferenced set, the stale entry of the referenced one being discarded
+        assertTrue(Arrays.equals(secondSet, index.getIndexSet(second)));
+        assertNotNull(first.indexSet);
+        assertNull(second.indexSet);
+        assertEquals(firstSet.length, index.getPostingCount());
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LengthPartitionedIndexTest extends TestCase {
+
+    public void testSameResultsAsSingleTree() {
+        Random random = new Random(37);
+        for (int trial = 0; trial < 30; trial++) {
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            LengthPartitionedIndex index = new LengthPartitionedIndex();
+            String[] documents = new String[1 + random.nextInt(30)];
+            for (int i = 0; i < documents.length; i++) {
+                // lengths spread over several partitions
+                documents[i] = randomString(random, 1 << random.nextInt(7), 3);
+                tree.put(documents[i], i);
+                index.put(documents[i], i);
+            }
+            tree.populateIndices();
+            index.populateIndices();
+            if (trial % 2 == 0) {
+                tree.freeze();
+                index.freeze();
+            }
+
+            for (int query = 0; query < 10; query++) {
+                String target = query % 2 == 0 ? randomString(random, 40, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f, 0.9f}) {
+                    assertEquals(target, tree.getSimilarStringIndexes(target, threshold), index.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, asMap(tree.getSimilarDocuments(target, threshold)), asMap(index.getSimilarDocuments(target, threshold)));
+                }
+                for (int k : new int[]{1, 5, 50, Integer.MAX_VALUE}) {
+                    assertEquals(target, tree.getTopKSimilar(target, k), index.getTopKSimilar(target, k));
+                }
+                String substring = target.substring(0, target.length() / 2);
+                assertEquals(substring, new HashSet<Integer>(tree.search(substring)), index.search(substring));
+            }
+        }
+    }
+
+    public void testPutAfterPopulateIndices() {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 30; trial++) {
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            LengthPartitionedIndex index = new LengthPartitionedIndex();
+            String[] documents = new String[2 + random.nextInt(30)];
+            for (int i = 0; i < documents.length; i++) {
+                // the later documents are longer, so that they open partitions the first ones did not
+                documents[i] = randomString(random, 2 + (1 << (i * 7 / documents.length)), 3);
+                tree.put(documents[i], i);
+                index.put(documents[i], i);
+                if (i == documents.length / 2) {
+                    tree.populateIndices();
+                    index.populateIndices();
+                }
+            }
+            if (trial % 2 == 0) {
+                tree.freeze();
+                index.freeze();
+            }
+
+            for (int query = 0; query < 10; query++) {
+                String target = query % 2 == 0 ? randomString(random, 40, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f, 0.9f}) {
+                    assertEquals(target, tree.getSimilarStringIndexes(target, threshold), index.getSimilarStringIndexes(target, threshold));
+                }
+                for (int k : new int[]{1, 5, Integer.MAX_VALUE}) {
+                    assertEquals(target, tree.getTopKSimilar(target, k), index.getTopKSimilar(target, k));
+                }
+            }
+        }
+
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        LengthPartitionedIndex index = new LengthPartitionedIndex();
+        tree.put("abcd", 0);
+        index.put("abcd", 0);
+        tree.put("abce", 1);
+        index.put("abce", 1);
+        tree.populateIndices();
+        index.populateIndices();
+        tree.put("abcdabcdabcdabcdx", 2);
+        index.put("abcdabcdabcdabcdx", 2);
+        assertEquals(tree.getSimilarStringIndexes("abce", 0.8f), index.getSimilarStringIndexes("abce", 0.8f));
+        assertEquals(tree.getTopKSimilar("abcdabcdx", 3), index.getTopKSimilar("abcdabcdx", 3));
+        index.freeze();
+        try {
+            index.put("abc", 3);
+            fail("a frozen index must not accept documents");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testMaximumSimilarity() {
+        for (int targetLength = 0; targetLength < 70; targetLength++) {
+            for (int length = 0; length < 70; length++) {
+                float similarity = (float) 2 * Math.min(targetLength, length) / (targetLength + length);
+                if (targetLength + length > 0) {
+                    assertTrue(similarity <= LengthPartitionedIndex.maximumSimilarity(targetLength, LengthPartitionedIndex.partition(length)));
+                }
+            }
+        }
+    }
+
+    public void testPutOutOfOrder() {
+        LengthPartitionedIndex index = new LengthPartitionedIndex();
+        index.put("a", 1);
+        try {
+            // a different partition must not accept it either
+            index.put("abcd", 0);
+            fail("the indexes must be non-decreasing across partitions");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testRepeatedIndex() {
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        LengthPartitionedIndex index = new LengthPartitionedIndex();
+        for (String key : new String[]{"abcd", "abce", "xbcf"}) {
+            tree.put(key, 0);
+            index.put(key, 0);
+        }
+        tree.populateIndices();
+        index.populateIndices();
+        assertEquals(asMap(tree.getSimilarDocuments("abcf", 0.1f)), asMap(index.getSimilarDocuments("abcf", 0.1f)));
+        assertEquals(1, index.getSimilarDocuments("abcf", 0.1f).size());
+        assertEquals(tree.getTopKSimilar("abcf", 2), index.getTopKSimilar("abcf", 2));
+
+        index = new LengthPartitionedIndex();
+        index.put("abc", 0);
+        try {
+            // the index would be returned by both partitions
+            index.put("abcdefgh", 0);
+            fail("a repeated index must stay in one partition");
+        } catch (IllegalStateException expected) {
+        }
+        index.put("abcdefgh", 1);
+    }
+
+    public void testPartitionsNumberTheirDocumentsLocally() {
+        LengthPartitionedIndex index = new LengthPartitionedIndex();
+        // a tree keyed by these indexes would size its arrays to a billion entries
+        index.put("abc", 0);
+        index.put("abcabcab", 1 << 29);
+        index.put("abcabcba", 1 << 30);
+        index.put("abd", (1 << 30) + 1);
+        index.populateIndices();
+        index.freeze();
+
+        GeneralizedSuffixTree small = index.getPartitionTree(LengthPartitionedIndex.partition(3));
+        GeneralizedSuffixTree large = index.getPartitionTree(LengthPartitionedIndex.partition(8));
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 1)), new HashSet<Integer>(small.search("ab")));
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 1)), new HashSet<Integer>(large.search("abc")));
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 1 << 29, 1 << 30)), index.search("abc"));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1 << 29, 1 << 30)), index.getSimilarStringIndexes("abcabcab", 0.7f));
+        assertEquals(Arrays.asList(new SimilarDocument(1 << 29, 1), new SimilarDocument(1 << 30, 0.75f)),
+                index.getTopKSimilar("abcabcab", 2));
+    }
+
+    private static HashMap<Integer, Float> asMap(Iterable<SimilarDocument> documents) {
+        HashMap<Integer, Float> map = new HashMap<Integer, Float>();
+        for (SimilarDocument document : documents) {
+            map.put(document.getIndex(), document.getSimilarity());
+        }
+        return map;
+    }
+
+    private static String randomString(Random random, int maxLength, int alphabet) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(maxLength);
+        for (int j = 0; j < length; j++) {
+            builder.append((char) ('a' + random.nextInt(alphabet)));
+        }
+        return builder.toString();
+    }
+}
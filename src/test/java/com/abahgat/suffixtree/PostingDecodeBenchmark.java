@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading every posting list of a tree from the int arrays of the nodes against decoding them from
+ * CompressedPostings, on the corpus of QueryBenchmark and on one whose document lengths spread over two orders of
+ * magnitude, where most of the posting lists hold documents of many lengths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class PostingDecodeBenchmark {
+
+    /**
+     * The maximum length decodeShort cuts the posting lists at, which leaves out most of the spread documents
+     */
+    private static final int SHORT_LENGTH = 64;
+
+    @Param({"20000"})
+    private int documentCount;
+
+    @Param({"uniform", "spread"})
+    private String corpus;
+
+    private int[][] indexSets;
+    private CompressedPostings.Decoder decoder;
+    private int nodeCount;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> documents = new ArrayList<String>();
+        int[] documentLengths = new int[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            StringBuilder document = new StringBuilder(QueryBenchmark.randomDocument(random));
+            if (corpus.equals("spread")) {
+                for (int words = random.nextInt(1 << random.nextInt(8)); words > 0; words--) {
+                    document.append(' ').append(QueryBenchmark.randomDocument(random));
+                }
+            }
+            documents.add(document.toString());
+            documentLengths[i] = document.length();
+        }
+
+        GeneralizedSuffixTree tree = GeneralizedSuffixTree.bulkLoad(documents);
+        List<Node> nodes = tree.getNodes();
+        nodeCount = nodes.size();
+        indexSets = new int[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            // the dense sets are stored as bitmaps, getIndexSet decodes them
+            indexSets[i] = nodes.get(i).getIndexSet();
+            if (indexSets[i] == null || indexSets[i].length != nodes.get(i).indexSize) {
+                throw new IllegalStateException("The index set of node " + i + " could not be read");
+            }
+        }
+        CompressedPostings postings = new CompressedPostings(nodes, documentLengths);
+        decoder = postings.new Decoder();
+    }
+
+    @Benchmark
+    public long readArrays() {
+        long sum = 0;
+        for (int[] indexSet : indexSets) {
+            for (int index : indexSet) {
+                sum += index;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long decode() {
+        long sum = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int count = decoder.decode(i, Integer.MAX_VALUE);
+            int[] results = decoder.getResults();
+            for (int j = 0; j < count; j++) {
+                sum += results[j];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long decodeShort() {
+        long sum = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int count = decoder.decode(i, SHORT_LENGTH);
+            int[] results = decoder.getResults();
+            for (int j = 0; j < count; j++) {
+                sum += results[j];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class PostingMergerTest extends TestCase {
+
+    public void testMerge() {
+        Random random = new Random(3);
+        PostingMerger merger = new PostingMerger();
+        for (int trial = 0; trial < 1000; trial++) {
+            TreeSet<Integer> expected = new TreeSet<Integer>();
+            int lists = random.nextInt(12);
+            for (int i = 0; i < lists; i++) {
+                TreeSet<Integer> list = new TreeSet<Integer>();
+                int length = random.nextInt(10);
+                for (int j = 0; j < length; j++) {
+                    list.add(random.nextInt(30));
+                }
+                expected.addAll(list);
+
+                // the list is added in the middle of a larger array
+                int[] array = new int[list.size() + 2];
+                int index = 1;
+                for (int value : list) {
+                    array[index++] = value;
+                }
+                merger.add(array, 1, 1 + list.size());
+            }
+
+            int[] merged = merger.merge();
+            assertEquals(expected.size(), merged.length);
+            int index = 0;
+            for (int value : expected) {
+                assertEquals(Arrays.toString(merged), value, merged[index++]);
+            }
+        }
+    }
+}
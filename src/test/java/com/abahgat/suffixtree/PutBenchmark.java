@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of GeneralizedSuffixTree.put for documents of growing length.
+ * A linear construction keeps (documentLength * ops/s) roughly constant across the parameters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PutBenchmark {
+
+    private static final String[] WORDS = {
+            "the", "of", "and", "to", "in", "is", "that", "for", "it", "as", "was", "with", "be", "by", "on",
+            "not", "this", "but", "from", "or", "have", "an", "they", "which", "one", "you", "were", "all",
+            "tree", "suffix", "string", "document", "index", "similar", "query", "length", "node", "edge"
+    };
+
+    @Param({"256", "1024", "4096", "16384"})
+    private int documentLength;
+
+    private String[] documents;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        documents = new String[8];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = randomDocument(random, documentLength);
+        }
+    }
+
+    @Benchmark
+    public GeneralizedSuffixTree putSingleDocument() {
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        tree.put(documents[0], 0);
+        return tree;
+    }
+
+    @Benchmark
+    public GeneralizedSuffixTree putDocuments() {
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        for (int i = 0; i < documents.length; i++) {
+            tree.put(documents[i], i);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public GeneralizedSuffixTree bulkLoadDocuments() {
+        return GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+    }
+
+    @Benchmark
+    public GeneralizedSuffixTree parallelBulkLoadDocuments() {
+        return GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds a document out of words drawn from a small vocabulary and separated by spaces, so that the tree
+     * sees repeated substrings like it does on natural text.
+     */
+    static String randomDocument(Random random, int length) {
+        StringBuilder document = new StringBuilder(length + 16);
+        while (document.length() < length) {
+            if (document.length() > 0) {
+                document.append(' ');
+            }
+            document.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        document.setLength(length);
+        return document.toString();
+    }
+}
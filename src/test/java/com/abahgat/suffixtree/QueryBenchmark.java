@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures getSimilarStringIndexes on a corpus of short documents built out of a small vocabulary,
+ * on the node objects and on the frozen tree, with its posting lists stored as arrays and compressed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final String[] SYLLABLES = {"ba", "ca", "da", "ka", "la", "ma", "na", "pa", "ra", "sa",
+            "ta", "ho", "ri", "to", "ne", "su", "mi", "ko", "ru", "te"};
+
+    @Param({"20000"})
+    private int documentCount;
+
+    @Param({"0.3", "0.7"})
+    private float ratio;
+
+    private String[] queries;
+    private GeneralizedSuffixTree tree;
+    private GeneralizedSuffixTree frozenTree;
+    private GeneralizedSuffixTree compressedTree;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> documents = new ArrayList<String>();
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(randomDocument(random));
+        }
+        queries = new String[64];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = documents.get(random.nextInt(documentCount));
+        }
+
+        tree = GeneralizedSuffixTree.bulkLoad(documents);
+        frozenTree = GeneralizedSuffixTree.bulkLoad(documents);
+        frozenTree.freeze();
+        compressedTree = GeneralizedSuffixTree.bulkLoad(documents);
+        compressedTree.freeze(GeneralizedSuffixTree.PostingFormat.COMPRESSED);
+    }
+
+    @Benchmark
+    public void similarNodes(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(tree.getSimilarStringIndexes(query, ratio));
+        }
+    }
+
+    @Benchmark
+    public void similarFrozen(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(frozenTree.getSimilarStringIndexes(query, ratio));
+        }
+    }
+
+    @Benchmark
+    public void similarFrozenArray(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(frozenTree.getSimilarStringIndexArray(query, ratio));
+        }
+    }
+
+    @Benchmark
+    public void similarCompressed(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(compressedTree.getSimilarStringIndexes(query, ratio));
+        }
+    }
+
+    static String randomDocument(Random random) {
+        StringBuilder document = new StringBuilder();
+        int length = 4 + random.nextInt(16);
+        for (int i = 0; i < length; i++) {
+            document.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return document.toString();
+    }
+}
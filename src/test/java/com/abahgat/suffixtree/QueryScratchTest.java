@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import junit.framework.TestCase;
+
+public class QueryScratchTest extends TestCase {
+
+    public void testVisit() {
+        QueryScratch scratch = new QueryScratch();
+        scratch.start(10, 100);
+        assertEquals(-1, scratch.visit(42, 5));
+        assertEquals(5, scratch.visit(42, 3));
+        // a longer visit is kept, a shorter one is not
+        assertEquals(5, scratch.visit(42, 7));
+        assertEquals(7, scratch.visit(42, 6));
+
+        // the next query starts with no node visited
+        scratch.start(10, 100);
+        assertEquals(-1, scratch.visit(42, 1));
+    }
+
+    public void testReleaseNodes() {
+        QueryScratch scratch = new QueryScratch();
+        scratch.start(10, 100);
+        scratch.visit(3, 4);
+        scratch.record(7, 4);
+        scratch.releaseNodes();
+        // small node arrays are kept
+        assertEquals(100, scratch.getNodeCapacity());
+
+        int nodeCount = QueryScratch.RETAINED_NODES + 1;
+        scratch.start(10, nodeCount);
+        scratch.visit(nodeCount - 1, 4);
+        scratch.record(7, 4);
+        scratch.releaseNodes();
+        assertEquals(0, scratch.getNodeCapacity());
+        // the documents of the query stay readable
+        assertEquals(1, scratch.size());
+        assertEquals(4, scratch.getLength(7));
+
+        // the next walk gets node arrays back, with no node visited
+        scratch.start(10, nodeCount);
+        assertTrue(scratch.getNodeCapacity() >= nodeCount);
+        assertEquals(-1, scratch.visit(nodeCount - 1, 2));
+        assertEquals(2, scratch.visit(nodeCount - 1, 1));
+        assertEquals(0, scratch.size());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SuffixArraysTest extends TestCase {
+
+    public void testSuffixArray() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 2000; trial++) {
+            int upper = random.nextInt(4);
+            int[] text = new int[random.nextInt(40)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = random.nextInt(upper + 1);
+            }
+
+            int[] sa = SuffixArrays.suffixArray(text, upper);
+            assertTrue(Arrays.toString(text), Arrays.equals(naiveSuffixArray(text), sa));
+
+            int[] lcp = SuffixArrays.lcp(text, sa);
+            for (int i = 1; i < sa.length; i++) {
+                assertEquals(Arrays.toString(text), commonPrefix(text, sa[i - 1], sa[i]), lcp[i]);
+            }
+        }
+    }
+
+    public void testBanana() {
+        int[] text = new int[]{'b', 'a', 'n', 'a', 'n', 'a'};
+        int[] sa = SuffixArrays.suffixArray(text, 'n');
+        assertTrue(Arrays.equals(new int[]{5, 3, 1, 0, 4, 2}, sa));
+        assertTrue(Arrays.equals(new int[]{0, 1, 3, 0, 0, 2}, SuffixArrays.lcp(text, sa)));
+    }
+
+    private static int[] naiveSuffixArray(final int[] text) {
+        Integer[] suffixes = new Integer[text.length];
+        for (int i = 0; i < text.length; i++) {
+            suffixes[i] = i;
+        }
+        Arrays.sort(suffixes, (a, b) -> {
+            int common = commonPrefix(text, a, b);
+            if (a + common == text.length || b + common == text.length) {
+                return b - a;
+            }
+            return Integer.compare(text[a + common], text[b + common]);
+        });
+
+        int[] sa = new int[text.length];
+        for (int i = 0; i < text.length; i++) {
+            sa[i] = suffixes[i];
+        }
+        return sa;
+    }
+
+    private static int commonPrefix(int[] text, int a, int b) {
+        int length = 0;
+        while (a + length < text.length && b + length < text.length && text[a + length] == text[b + length]) {
+            length++;
+        }
+        return length;
+    }
+}
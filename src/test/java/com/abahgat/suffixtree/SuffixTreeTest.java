@@ -15,9 +15,16 @@
  */
 package com.abahgat.suffixtree;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
 
 import junit.framework.TestCase;
 
@@ -260,6 +267,9 @@ public class SuffixTreeTest extends TestCase {
 
             assertEquals(node.getIndexSet().length, indexSet.size());
             assertEquals(fetchedIndexSet, indexSet);
+            for (int i = 1; i < node.getIndexSet().length; i++) {
+                assertTrue(node.getIndexSet()[i - 1] < node.getIndexSet()[i]);
+            }
         }
     }
 
@@ -315,4 +325,1103 @@ public class SuffixTreeTest extends TestCase {
         }
 
     }
+
+    public void testBulkLoad() {
+        String[] words = new String[]{"libertypike",
+                "franklintn",
+                "carothersjohnhenryhouse",
+                "carothersezealhouse",
+                "",
+                "acrossthetauntonriverfromdightonindightonrockstatepark",
+                "dightonma",
+                "dightonrock",
+                "6mineoflowgaponlowgapfork",
+                "lowgapky",
+                "lemasterjohnjandellenhouse",
+                "lemasterhouse",
+                "lemasterhouse",
+                "bethesda"};
+        assertSameTree(words);
+
+        Random random = new Random(7);
+        for (int trial = 0; trial < 300; trial++) {
+            String[] documents = new String[1 + random.nextInt(8)];
+            for (int i = 0; i < documents.length; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(3)));
+                }
+                documents[i] = document.toString();
+            }
+            assertSameTree(documents);
+        }
+    }
+
+    public void testPutAfterBulkLoad() {
+        String[] words = new String[]{"cacaor", "caricato", "cacato", "cacata", "caricata", "cacao", "banana"};
+        GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(words).subList(0, 4));
+        for (int i = 4; i < words.length; i++) {
+            in.put(words[i], i);
+        }
+        for (int i = 0; i < words.length; i++) {
+            for (String s : getSubstrings(words[i])) {
+                assertTrue(in.search(s).contains(i));
+            }
+        }
+        assertEmpty(in.search("aoca"));
+    }
+
+    /**
+     * Checks that bulkLoad, sequential and parallel, builds the same tree as put followed by populateIndices.
+     */
+    private static void assertSameTree(String[] documents) {
+        GeneralizedSuffixTree expected = new GeneralizedSuffixTree();
+        for (int i = 0; i < documents.length; i++) {
+            expected.put(documents[i], i);
+        }
+        expected.populateIndices();
+
+        for (int parallelism : new int[]{1, 4}) {
+            GeneralizedSuffixTree actual = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), parallelism);
+            assertEquals(expected.getNodes().size(), actual.getNodes().size());
+            assertSameNode(expected.getRoot(), actual.getRoot());
+
+            for (String document : documents) {
+                if (document.isEmpty()) {
+                    continue;
+                }
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    assertEquals(expected.getSimilarStringIndexes(document, threshold),
+                            actual.getSimilarStringIndexes(document, threshold));
+                }
+            }
+        }
+    }
+
+    private static void assertSameNode(Node expected, Node actual) {
+        String text = expected.getText();
+        assertEquals(text, actual.getText());
+        assertEquals(text, expected.getSubstringLength(), actual.getSubstringLength());
+        assertTrue(text, Arrays.equals(expected.getNodeData(), actual.getNodeData()));
+        assertEquals(text, sortedIndexSet(expected), sortedIndexSet(actual));
+        if (expected.getSuffix() == null) {
+            assertNull(text, actual.getSuffix());
+        } else {
+            assertEquals(text, expected.getSuffix().getText(), actual.getSuffix().getText());
+        }
+
+        assertEquals(text, expected.getEdges().size(), actual.getEdges().size());
+        for (Edge e : expected.getEdges().values()) {
+            Edge other = actual.getEdge(e.getLabelChar(0));
+            assertNotNull(text, other);
+            assertEquals(text, e.getLabel(), other.getLabel());
+            assertSameNode(e.getDest(), other.getDest());
+        }
+    }
+
+    private static List<Integer> sortedIndexSet(Node node) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int index : node.getIndexSet()) {
+            indexes.add(index);
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    public void testFreeze() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 200; trial++) {
+            String[] documents = new String[1 + random.nextInt(8)];
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            GeneralizedSuffixTree listed = new GeneralizedSuffixTree();
+            GeneralizedSuffixTree compressed = new GeneralizedSuffixTree();
+            for (int i = 0; i < documents.length; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(3)));
+                }
+                documents[i] = document.toString();
+                in.put(documents[i], i);
+                listed.put(documents[i], i);
+                compressed.put(documents[i], i);
+            }
+            in.populateIndices();
+            listed.populateIndices();
+            compressed.populateIndices();
+
+            List<Collection<Integer>> searchResults = new ArrayList<Collection<Integer>>();
+            List<HashSet<Integer>> similarResults = new ArrayList<HashSet<Integer>>();
+            for (String document : documents) {
+                for (String s : getSubstrings(document + "ab")) {
+                    searchResults.add(new HashSet<Integer>(in.search(s)));
+                }
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    similarResults.add(in.getSimilarStringIndexes(document, threshold));
+                }
+            }
+
+            in.freeze();
+            listed.freeze(true);
+            compressed.freeze(GeneralizedSuffixTree.PostingFormat.COMPRESSED);
+            assertTrue(in.isFrozen());
+            int searchIndex = 0;
+            int similarIndex = 0;
+            for (String document : documents) {
+                for (String s : getSubstrings(document + "ab")) {
+                    assertEquals(s, searchResults.get(searchIndex), new HashSet<Integer>(in.search(s)));
+                    assertEquals(s, searchResults.get(searchIndex), new HashSet<Integer>(listed.search(s)));
+                    assertEquals(s, searchResults.get(searchIndex++), new HashSet<Integer>(compressed.search(s)));
+                }
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    assertEquals(similarResults.get(similarIndex), in.getSimilarStringIndexes(document, threshold));
+                    assertEquals(similarResults.get(similarIndex), listed.getSimilarStringIndexes(document, threshold));
+                    assertEquals(similarResults.get(similarIndex++), compressed.getSimilarStringIndexes(document, threshold));
+                }
+            }
+        }
+    }
+
+    public void testPostingEndByLength() {
+        Random random = new Random(73);
+        for (int trial = 0; trial < 20; trial++) {
+            // mostly short documents and a few long ones, so that the postings of a node have runs of equal lengths
+            String[] documents = new String[20 + random.nextInt(60)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = random.nextInt(8) == 0 ? randomString(random, 60, 3) : randomString(random, 4, 3);
+            }
+            for (GeneralizedSuffixTree.PostingFormat format : new GeneralizedSuffixTree.PostingFormat[]{
+                    GeneralizedSuffixTree.PostingFormat.ARRAY, GeneralizedSuffixTree.PostingFormat.COMPRESSED}) {
+                GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+                in.freeze(format);
+                SuffixTreeView view = in.getView();
+                for (int node = 0; node < view.size(); node++) {
+                    List<Integer> all = new ArrayList<Integer>();
+                    int end = view.getPostingEnd(node);
+                    int[] postings = view.getPostings(node);
+                    for (int i = view.getPostingStart(node); i < end; i++) {
+                        all.add(postings[i]);
+                    }
+
+                    // the lengths on either side of each length held, in an order which decodes less, then more
+                    List<Integer> maximumLengths = new ArrayList<Integer>(Arrays.asList(0, Integer.MAX_VALUE));
+                    for (int index : all) {
+                        int length = documents[index].length();
+                        maximumLengths.addAll(Arrays.asList(length - 1, length, length + 1));
+                    }
+                    Collections.shuffle(maximumLengths, random);
+                    for (int maximumLength : maximumLengths) {
+                        HashSet<Integer> expected = new HashSet<Integer>();
+                        for (int index : all) {
+                            if (documents[index].length() <= maximumLength) {
+                                expected.add(index);
+                            }
+                        }
+                        HashSet<Integer> pruned = new HashSet<Integer>();
+                        end = view.getPostingEnd(node, maximumLength);
+                        postings = view.getPostings(node);
+                        for (int i = view.getPostingStart(node); i < end; i++) {
+                            pruned.add(postings[i]);
+                        }
+                        assertEquals(format + " " + maximumLength, expected, pruned);
+                        assertEquals(expected.size(), end - view.getPostingStart(node));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testPutAfterFreeze() {
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.put("cacao", 0);
+        try {
+            in.freeze();
+            fail("freeze must require populated indices");
+        } catch (IllegalStateException expected) {
+        }
+
+        in.populateIndices();
+        in.freeze();
+        try {
+            in.put("banana", 1);
+            fail("a frozen tree must not accept documents");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(in.search("aca").contains(0));
+        assertTrue(in.search("banana").isEmpty());
+        try {
+            in.searchNode("aca");
+            fail("the nodes of a frozen tree are released");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testParallelPopulateIndices() {
+        // large enough for the subtrees near the root to be split among tasks
+        Random random = new Random(5);
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder document = new StringBuilder();
+            int length = 4 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                document.append((char) ('a' + random.nextInt(6)));
+            }
+            in.put(document.toString(), i);
+        }
+
+        in.populateIndices();
+        List<int[]> expected = new ArrayList<int[]>();
+        for (Node node : in.getNodes()) {
+            expected.add(node.getIndexSet());
+        }
+
+        in.populateIndices(4);
+        assertEquals(expected.size(), in.getNodes().size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(Arrays.equals(expected.get(i), in.getNodes().get(i).getIndexSet()));
+        }
+    }
+
+    public void testRepairIndices() {
+        Random random = new Random(17);
+        for (int trial = 0; trial < 200; trial++) {
+            String[] documents = new String[2 + random.nextInt(8)];
+            for (int i = 0; i < documents.length; i++) {
+                StringBuilder document = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int j = 0; j < length; j++) {
+                    document.append((char) ('a' + random.nextInt(3)));
+                }
+                documents[i] = document.toString();
+            }
+
+            // the indices are populated once and then repaired after each batch of puts
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            GeneralizedSuffixTree expected = new GeneralizedSuffixTree();
+            int populated = 1 + random.nextInt(documents.length - 1);
+            for (int i = 0; i < documents.length; i++) {
+                // an index may be repeated by the following document
+                int index = i - (i > 0 && random.nextInt(4) == 0 ? 1 : 0);
+                in.put(documents[i], index);
+                expected.put(documents[i], index);
+                if (i + 1 == populated) {
+                    in.populateIndices();
+                } else if (i + 1 > populated && random.nextBoolean()) {
+                    in.repairIndices();
+                }
+            }
+            in.repairIndices();
+            expected.populateIndices();
+
+            assertEquals(expected.getNodes().size(), in.getNodes().size());
+            assertSameNode(expected.getRoot(), in.getRoot());
+            for (String document : documents) {
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    assertEquals(expected.getSimilarStringIndexes(document, threshold),
+                            in.getSimilarStringIndexes(document, threshold));
+                }
+            }
+
+            in.put("abc", documents.length);
+            expected.put("abc", documents.length);
+            expected.populateIndices();
+            in.freeze();
+            for (String document : documents) {
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    assertEquals(expected.getSimilarStringIndexes(document, threshold),
+                            in.getSimilarStringIndexes(document, threshold));
+                }
+            }
+        }
+    }
+
+    public void testConcurrentRepairIndices() throws InterruptedException {
+        Random random = new Random(53);
+        for (int trial = 0; trial < 40; trial++) {
+            final String[] documents = new String[4 + random.nextInt(12)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 15, 3);
+            }
+            final GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            int populated = documents.length / 2;
+            for (int i = 0; i < populated; i++) {
+                in.put(documents[i], i);
+            }
+            in.populateIndices();
+            for (int i = populated; i < documents.length; i++) {
+                in.put(documents[i], i);
+            }
+
+            // the threads all start with dirty indices, one of them repairs them while the others wait
+            final GeneralizedSuffixTree expected = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < documents.length; i++) {
+                                String document = documents[(i + offset) % documents.length];
+                                assertEquals(expected.getSimilarStringIndexes(document, 0.3f),
+                                        in.getSimilarStringIndexes(document, 0.3f));
+                                assertEquals(expected.getTopKSimilar(document, 3), in.getTopKSimilar(document, 3));
+                                assertEquals(expected.countDocumentsContaining(document),
+                                        in.countDocumentsContaining(document));
+                            }
+                        } catch (Throwable failure) {
+                            failures.add(failure);
+                        }
+                    }
+                });
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), failures);
+        }
+    }
+
+    public void testUnindexedNearestStrings() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 100; trial++) {
+            String[] documents = new String[1 + random.nextInt(10)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 15, 3);
+            }
+            GeneralizedSuffixTree bulkLoaded = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            GeneralizedSuffixTree frozen = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            frozen.freeze(trial % 2 == 0);
+
+            for (int query = 0; query < 20; query++) {
+                // the queries are not in the tree, and most of them do not even occur in a document
+                String target = randomString(random, 20, 4);
+                for (float threshold : new float[]{0.1f, 0.3f, 0.5f, 0.7f}) {
+                    HashSet<Integer> expected = new HashSet<Integer>();
+                    for (int i = 0; i < documents.length; i++) {
+                        if (areStringsSimilar(target, documents[i], threshold)) {
+                            expected.add(i);
+                        }
+                    }
+                    assertEquals(target, expected, bulkLoaded.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, expected, frozen.getSimilarStringIndexes(target, threshold));
+                }
+            }
+        }
+    }
+
+    public void testTopKSimilar() {
+        Random random = new Random(29);
+        for (int trial = 0; trial < 100; trial++) {
+            final String[] documents = new String[1 + random.nextInt(12)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 15, 4);
+            }
+            GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+
+            for (int query = 0; query < 20; query++) {
+                final String target = query % 2 == 0 ? randomString(random, 20, 4) : documents[random.nextInt(documents.length)];
+                List<SimilarDocument> ranking = new ArrayList<SimilarDocument>();
+                for (int i = 0; i < documents.length; i++) {
+                    float similarity = Utils.getSimilarity(target, documents[i]);
+                    if (similarity > 0) {
+                        ranking.add(new SimilarDocument(i, similarity));
+                    }
+                }
+                Collections.sort(ranking, new Comparator<SimilarDocument>() {
+                    public int compare(SimilarDocument a, SimilarDocument b) {
+                        int bySimilarity = Float.compare(b.getSimilarity(), a.getSimilarity());
+                        return bySimilarity != 0 ? bySimilarity : Integer.compare(a.getIndex(), b.getIndex());
+                    }
+                });
+
+                for (int k : new int[]{1, 3, 100, Integer.MAX_VALUE}) {
+                    assertEquals(target, ranking.subList(0, Math.min(k, ranking.size())), in.getTopKSimilar(target, k));
+                }
+            }
+        }
+    }
+
+    public void testContributingAncestorJump() {
+        Random random = new Random(59);
+        for (int trial = 0; trial < 60; trial++) {
+            // repeated and near-duplicate documents make long chains of ancestors with the same postings
+            String[] documents = new String[2 + random.nextInt(14)];
+            for (int i = 0; i < documents.length; i++) {
+                if (i == 0 || random.nextInt(3) == 0) {
+                    documents[i] = randomString(random, 30, 4);
+                } else {
+                    StringBuilder duplicate = new StringBuilder(documents[random.nextInt(i)]);
+                    if (duplicate.length() > 0 && random.nextBoolean()) {
+                        duplicate.setCharAt(random.nextInt(duplicate.length()), (char) ('a' + random.nextInt(4)));
+                    }
+                    documents[i] = duplicate.toString();
+                }
+            }
+
+            // the indices are repaired after some of the last puts, then the tree is frozen
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            boolean ancestorJumps = trial % 4 != 3;
+            in.setAncestorJumps(ancestorJumps);
+            int populated = 1 + random.nextInt(documents.length - 1);
+            for (int i = 0; i < documents.length; i++) {
+                in.put(documents[i], i);
+                if (i + 1 == populated || (i + 1 > populated && random.nextBoolean())) {
+                    if (i + 1 == populated) {
+                        in.populateIndices();
+                    }
+                    assertTopKSimilar(Arrays.copyOf(documents, i + 1), in, documents[random.nextInt(i + 1)]);
+                    if (ancestorJumps) {
+                        assertContributingAncestors(in);
+                    } else {
+                        SuffixTreeView view = in.getView();
+                        for (int node = 0; node < view.size(); node++) {
+                            assertEquals(view.getParent(node), view.getContributingAncestor(node));
+                        }
+                    }
+                }
+            }
+            for (int pass = 0; pass < 2; pass++) {
+                for (int query = 0; query < 10; query++) {
+                    String target = query % 2 == 0 ? randomString(random, 30, 4) : documents[random.nextInt(documents.length)];
+                    assertTopKSimilar(documents, in, target);
+                }
+                in.freeze();
+            }
+        }
+    }
+
+    private static void assertContributingAncestors(GeneralizedSuffixTree in) {
+        List<Node> nodes = in.getNodes();
+        SuffixTreeView view = in.getView();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node ancestor = nodes.get(i).getSourceNode();
+            while (ancestor != null && ancestor.indexSize == nodes.get(i).indexSize) {
+                ancestor = ancestor.getSourceNode();
+            }
+            int expected = ancestor == null ? SuffixTreeView.NONE : nodes.indexOf(ancestor);
+            assertEquals(expected, view.getContributingAncestor(i));
+        }
+    }
+
+    private static void assertTopKSimilar(String[] documents, GeneralizedSuffixTree in, String target) {
+        List<SimilarDocument> ranking = new ArrayList<SimilarDocument>();
+        for (int i = 0; i < documents.length; i++) {
+            float similarity = Utils.getSimilarity(target, documents[i]);
+            if (similarity > 0) {
+                ranking.add(new SimilarDocument(i, similarity));
+            }
+        }
+        Collections.sort(ranking, Collections.reverseOrder(GeneralizedSuffixTree.WORST_FIRST));
+        for (int k : new int[]{1, 3, 100}) {
+            assertEquals(target, ranking.subList(0, Math.min(k, ranking.size())), in.getTopKSimilar(target, k));
+        }
+    }
+
+    public void testRepetitiveTargets() {
+        // the leaf of the first document is reached by "abcd", cut short by the x, and then again by "abcdefgh"
+        String[] pair = {"abcdefgh", "zzzz"};
+        String cut = "abcdxabcdefgh";
+        for (int format = -1; format < 3; format++) {
+            GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(pair));
+            if (format >= 0) {
+                in.freeze(GeneralizedSuffixTree.PostingFormat.values()[format]);
+            }
+            assertEquals(Collections.singletonList(new SimilarDocument(0, Utils.getSimilarity(cut, pair[0]))),
+                    in.getSimilarDocuments(cut, 0.5f));
+            assertTopKSimilar(pair, in, cut);
+        }
+
+        Random random = new Random(79);
+        for (int trial = 0; trial < 20; trial++) {
+            // the offsets of a periodic target match the same nodes again, and the noise in it cuts some of
+            // the matches short, so that a node is also reached again with a longer match
+            String[] documents = new String[5 + random.nextInt(40)];
+            for (int i = 0; i < documents.length; i++) {
+                String unit = randomString(random, 6, 2) + "a";
+                StringBuilder document = new StringBuilder();
+                while (document.length() < 10 + i % 30) {
+                    document.append(random.nextInt(10) == 0 ? "b" : unit);
+                }
+                documents[i] = document.toString();
+            }
+            GeneralizedSuffixTree populated = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            GeneralizedSuffixTree frozen = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            frozen.freeze(GeneralizedSuffixTree.PostingFormat.values()[trial % 3]);
+
+            for (int query = 0; query < 5; query++) {
+                String unit = query % 2 == 0 ? documents[random.nextInt(documents.length)].substring(0, 3) : "ab";
+                StringBuilder target = new StringBuilder();
+                while (target.length() < 100 + random.nextInt(100)) {
+                    target.append(random.nextInt(6) == 0 ? "c" : unit);
+                }
+                String t = target.toString();
+                for (GeneralizedSuffixTree in : new GeneralizedSuffixTree[]{populated, frozen}) {
+                    for (float threshold : new float[]{0.05f, 0.2f, 0.5f}) {
+                        HashMap<Integer, Float> expected = new HashMap<Integer, Float>();
+                        for (int i = 0; i < documents.length; i++) {
+                            float similarity = Utils.getSimilarity(t, documents[i]);
+                            if (similarity > threshold) {
+                                expected.put(i, similarity);
+                            }
+                        }
+                        assertEquals(t, expected.keySet(), in.getSimilarStringIndexes(t, threshold));
+                        HashMap<Integer, Float> actual = new HashMap<Integer, Float>();
+                        for (SimilarDocument document : in.getSimilarDocuments(t, threshold)) {
+                            actual.put(document.getIndex(), document.getSimilarity());
+                        }
+                        assertEquals(t, expected, actual);
+                    }
+                    assertTopKSimilar(documents, in, t);
+                }
+            }
+        }
+    }
+
+    public void testSimilarDocuments() {
+        Random random = new Random(31);
+        for (int trial = 0; trial < 100; trial++) {
+            String[] documents = new String[1 + random.nextInt(12)];
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 15, 3);
+                // the indexes are sparse, so that the scratch arrays have to grow
+                in.put(documents[i], 3 * i);
+            }
+            in.populateIndices();
+
+            for (int query = 0; query < 20; query++) {
+                String target = query % 2 == 0 ? randomString(random, 20, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    HashMap<Integer, Float> expected = new HashMap<Integer, Float>();
+                    for (int i = 0; i < documents.length; i++) {
+                        float similarity = Utils.getSimilarity(target, documents[i]);
+                        if (similarity > threshold) {
+                            expected.put(3 * i, similarity);
+                        }
+                    }
+
+                    HashMap<Integer, Float> actual = new HashMap<Integer, Float>();
+                    for (SimilarDocument document : in.getSimilarDocuments(target, threshold)) {
+                        assertNull(actual.put(document.getIndex(), document.getSimilarity()));
+                    }
+                    assertEquals(target, expected, actual);
+                    assertEquals(target, expected.keySet(), in.getSimilarStringIndexes(target, threshold));
+                }
+            }
+        }
+    }
+
+    public void testMinimumRatio() {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 60; trial++) {
+            String[] documents = new String[2 + random.nextInt(12)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 1 << (1 + random.nextInt(5)), 3);
+            }
+            float minimumRatio = 0.1f + random.nextInt(5) / 10f;
+
+            GeneralizedSuffixTree bulkLoaded = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), 1, minimumRatio);
+            // some documents are added after the indices are populated, they are repaired
+            GeneralizedSuffixTree repaired = new GeneralizedSuffixTree();
+            repaired.setMinimumRatio(minimumRatio);
+            for (int i = 0; i < documents.length; i++) {
+                repaired.put(documents[i], i);
+                if (i == documents.length / 2) {
+                    repaired.populateIndices();
+                }
+            }
+            GeneralizedSuffixTree frozen = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), 1, minimumRatio);
+            frozen.freeze(trial % 2 == 0);
+            GeneralizedSuffixTree compressed = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), 1, minimumRatio);
+            compressed.freeze(GeneralizedSuffixTree.PostingFormat.COMPRESSED);
+
+            assertEquals(0, bulkLoaded.getRoot().indexSize);
+            for (int query = 0; query < 10; query++) {
+                String target = query % 2 == 0 ? randomString(random, 20, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{minimumRatio, minimumRatio + 0.15f, 0.8f}) {
+                    HashSet<Integer> expected = new HashSet<Integer>();
+                    for (int i = 0; i < documents.length; i++) {
+                        if (areStringsSimilar(target, documents[i], threshold)) {
+                            expected.add(i);
+                        }
+                    }
+                    assertEquals(target, expected, bulkLoaded.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, expected, repaired.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, expected, frozen.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, expected, compressed.getSimilarStringIndexes(target, threshold));
+                }
+
+                List<SimilarDocument> ranking = new ArrayList<SimilarDocument>();
+                for (SimilarDocument document : GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents)).getTopKSimilar(target, 100)) {
+                    if (document.getSimilarity() > minimumRatio) {
+                        ranking.add(document);
+                    }
+                }
+                assertEquals(target, ranking, bulkLoaded.getTopKSimilar(target, 100));
+                assertEquals(target, ranking, frozen.getTopKSimilar(target, 100));
+                assertEquals(target, ranking, compressed.getTopKSimilar(target, 100));
+            }
+
+            try {
+                bulkLoaded.getSimilarStringIndexes(documents[0], minimumRatio - 0.05f);
+                fail("a ratio below the minimum ratio must be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                bulkLoaded.setMinimumRatio(0.5f);
+                fail("the minimum ratio must be set before the indices are populated");
+            } catch (IllegalStateException expected) {
+            }
+            if (trial % 2 == 0) {
+                assertTrue(documents[0].isEmpty() || frozen.search(documents[0]).contains(0));
+            } else {
+                try {
+                    frozen.search(documents[0]);
+                    fail("the cut posting lists of a frozen tree can not be searched");
+                } catch (IllegalStateException expected) {
+                }
+            }
+        }
+    }
+
+    public void testLazyIndices() throws InterruptedException {
+        Random random = new Random(43);
+        for (int trial = 0; trial < 60; trial++) {
+            final String[] documents = new String[2 + random.nextInt(12)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 15, 3);
+            }
+            GeneralizedSuffixTree unbounded = new GeneralizedSuffixTree();
+            // a cap of a few postings evicts the sets after almost every query
+            final GeneralizedSuffixTree capped = new GeneralizedSuffixTree();
+            for (int i = 0; i < documents.length - 1; i++) {
+                unbounded.put(documents[i], i);
+                capped.put(documents[i], i);
+            }
+            unbounded.populateIndicesLazily();
+            capped.populateIndicesLazily(random.nextInt(8));
+
+            // the last document is added afterwards, the sets computed before are dropped
+            assertNotNull(unbounded.getSimilarStringIndexes(documents[0], 0.1f));
+            unbounded.put(documents[documents.length - 1], documents.length - 1);
+            capped.put(documents[documents.length - 1], documents.length - 1);
+
+            for (int query = 0; query < 10; query++) {
+                String target = query % 2 == 0 ? randomString(random, 20, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    HashSet<Integer> expected = new HashSet<Integer>();
+                    for (int i = 0; i < documents.length; i++) {
+                        if (areStringsSimilar(target, documents[i], threshold)) {
+                            expected.add(i);
+                        }
+                    }
+                    assertEquals(target, expected, unbounded.getSimilarStringIndexes(target, threshold));
+                    assertEquals(target, expected, capped.getSimilarStringIndexes(target, threshold));
+                }
+                assertEquals(target, GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents)).getTopKSimilar(target, 5),
+                        capped.getTopKSimilar(target, 5));
+            }
+
+            // the queries share the sets computed by one another
+            final List<HashSet<Integer>> expected = new ArrayList<HashSet<Integer>>();
+            for (int i = 0; i < documents.length; i++) {
+                expected.add(unbounded.getSimilarStringIndexes(documents[i], 0.3f));
+            }
+            final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 5 * documents.length; i++) {
+                                int document = (i + offset) % documents.length;
+                                assertEquals(expected.get(document), capped.getSimilarStringIndexes(documents[document], 0.3f));
+                            }
+                        } catch (Throwable failure) {
+                            failures.add(failure);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), failures);
+
+            unbounded.freeze();
+            for (int i = 0; i < documents.length; i++) {
+                assertEquals(expected.get(i), unbounded.getSimilarStringIndexes(documents[i], 0.3f));
+            }
+        }
+    }
+
+    public void testLazyIndicesAfterPutsPastCapacity() {
+        Random random = new Random(61);
+        String[] documents = new String[40];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = randomString(random, 15, 3);
+        }
+        GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+        in.setMinimumRatio(0.3f);
+        for (int i = 0; i < 4; i++) {
+            in.put(documents[i], i);
+        }
+        in.populateIndicesLazily();
+        // the lengths of the documents outgrow the array they were kept in when the indices were populated
+        for (int i = 4; i < documents.length; i++) {
+            in.put(documents[i], i);
+        }
+
+        for (String target : documents) {
+            for (float threshold : new float[]{0.3f, 0.5f, 0.8f}) {
+                HashSet<Integer> expected = new HashSet<Integer>();
+                for (int i = 0; i < documents.length; i++) {
+                    if (areStringsSimilar(target, documents[i], threshold)) {
+                        expected.add(i);
+                    }
+                }
+                assertEquals(target, expected, in.getSimilarStringIndexes(target, threshold));
+            }
+        }
+    }
+
+    public void testSharedIndexSets() {
+        Random random = new Random(47);
+        for (int trial = 0; trial < 50; trial++) {
+            List<String> documents = new ArrayList<String>();
+            for (int i = 1 + random.nextInt(30); i > 0; i--) {
+                documents.add(randomString(random, 15, 3));
+            }
+            GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(documents, 1 + random.nextInt(3));
+            assertSharedIndexSets(in);
+
+            // the repair does not modify the shared sets of the other nodes, and shares the sets it computes with them
+            int last = documents.size() - 1;
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                // a repeated index gives new nodes the sets of the nodes of its other documents
+                last += random.nextInt(2);
+                in.put(randomString(random, 15, 3), last);
+                in.repairIndices();
+                assertSharedIndexSets(in);
+            }
+            for (Node node : in.getNodes()) {
+                assertEquals(node.fetchIndexSet(), new HashSet<Integer>(sortedIndexSet(node)));
+            }
+        }
+    }
+
+    /**
+     * Checks that the nodes whose index sets have the same content share the same array, and that
+     * getSharedIndexSetBytes counts the copies this saves.
+     */
+    private static void assertSharedIndexSets(GeneralizedSuffixTree in) {
+        HashMap<List<Integer>, int[]> sets = new HashMap<List<Integer>, int[]>();
+        long bytes = 0;
+        for (Node node : in.getNodes()) {
+            int[] shared = sets.get(sortedIndexSet(node));
+            if (shared == null) {
+                sets.put(sortedIndexSet(node), node.getIndexSet());
+            } else {
+                assertSame(shared, node.getIndexSet());
+                bytes += 16 + 4 * shared.length;
+            }
+        }
+        assertEquals(bytes, in.getSharedIndexSetBytes());
+    }
+
+    public void testBitmapIndexSets() {
+        Random random = new Random(53);
+        for (int trial = 0; trial < 10; trial++) {
+            // enough documents for the shallow nodes to hold a large share of them
+            String[] documents = new String[200 + random.nextInt(300)];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = randomString(random, 12, 3);
+            }
+            float minimumRatio = trial % 2 == 0 ? 0 : 0.2f;
+            GeneralizedSuffixTree in = new GeneralizedSuffixTree();
+            in.setMinimumRatio(minimumRatio);
+            for (int i = 0; i < documents.length; i++) {
+                in.put(documents[i], i);
+                if (i == documents.length / 2) {
+                    in.populateIndices(1 + trial % 3);
+                }
+            }
+            GeneralizedSuffixTree expected = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), 1, minimumRatio);
+
+            int bitmaps = 0;
+            in.repairIndices();
+            for (Node node : in.getNodes()) {
+                if (node.indexBitmap != null) {
+                    bitmaps++;
+                    assertNull(node.indexSet);
+                    assertEquals(node.indexSize, node.getIndexSet().length);
+                }
+            }
+            assertTrue(bitmaps > 0);
+            assertEquals(expected.getNodes().size(), in.getNodes().size());
+            assertSameNode(expected.getRoot(), in.getRoot());
+
+            for (int query = 0; query < 10; query++) {
+                String target = query % 2 == 0 ? randomString(random, 20, 3) : documents[random.nextInt(documents.length)];
+                for (float threshold : new float[]{minimumRatio, 0.4f, 0.7f}) {
+                    HashSet<Integer> similar = new HashSet<Integer>();
+                    for (int i = 0; i < documents.length; i++) {
+                        if (areStringsSimilar(target, documents[i], threshold)) {
+                            similar.add(i);
+                        }
+                    }
+                    assertEquals(target, similar, in.getSimilarStringIndexes(target, threshold));
+                }
+                assertEquals(target, expected.getTopKSimilar(target, 10), in.getTopKSimilar(target, 10));
+            }
+        }
+    }
+
+    public void testPrimitiveResults() {
+        Random random = new Random(59);
+        for (int trial = 0; trial < 50; trial++) {
+            String[] documents = randomDocuments(random);
+            GeneralizedSuffixTree[] trees = resultTrees(documents, trial);
+            GeneralizedSuffixTree populated = trees[1], frozen = trees[2];
+
+            for (Node node : populated.getNodes()) {
+                assertEquals(node.fetchIndexSet(), toSet(node.fetchIndexArray()));
+            }
+            for (String s : querySubstrings(documents)) {
+                for (GeneralizedSuffixTree in : trees) {
+                    assertSorted(in.searchIndexes(s));
+                    assertEquals(s, new HashSet<Integer>(in.search(s)), toSet(in.searchIndexes(s)));
+                }
+            }
+            for (String document : documents) {
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    for (GeneralizedSuffixTree in : new GeneralizedSuffixTree[]{populated, frozen}) {
+                        HashSet<Integer> expected = in.getSimilarStringIndexes(document, threshold);
+                        int[] indexes = in.getSimilarStringIndexArray(document, threshold);
+                        assertSorted(indexes);
+                        assertEquals(expected, toSet(indexes));
+
+                        final List<Integer> consumed = new ArrayList<Integer>();
+                        in.forEachSimilarStringIndex(document, threshold, consumed::add);
+                        assertEquals(expected.size(), consumed.size());
+                        assertEquals(expected, new HashSet<Integer>(consumed));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testNestedForEachSimilarStringIndex() {
+        Random random = new Random(67);
+        final String[] documents = new String[60];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = randomString(random, 20, 2);
+        }
+        final GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+        final GeneralizedSuffixTree other = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents).subList(0, 30));
+        other.freeze();
+
+        for (final String target : Arrays.copyOf(documents, 10)) {
+            HashSet<Integer> expected = in.getSimilarStringIndexes(target, 0.3f);
+            final HashSet<Integer> expectedInner = other.getSimilarStringIndexes(target, 0.5f);
+            final List<SimilarDocument> expectedTopK = in.getTopKSimilar(target, 3);
+
+            // the consumer queries another tree and the tree itself, which must not cut the outer query short
+            final List<Integer> consumed = new ArrayList<Integer>();
+            in.forEachSimilarStringIndex(target, 0.3f, id -> {
+                consumed.add(id);
+                assertEquals(expectedInner, other.getSimilarStringIndexes(target, 0.5f));
+                assertEquals(expectedTopK, in.getTopKSimilar(target, 3));
+                assertEquals(in.search(documents[id]).size(), in.countDocumentsContaining(documents[id]));
+            });
+            assertEquals(expected.size(), consumed.size());
+            assertEquals(expected, new HashSet<Integer>(consumed));
+        }
+    }
+
+    public void testNestedVisitors() {
+        Random random = new Random(71);
+        final String[] documents = new String[300];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = randomString(random, 20, 2);
+        }
+        final GeneralizedSuffixTree in = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+        GeneralizedSuffixTree unpopulated = new GeneralizedSuffixTree();
+        for (int i = 0; i < documents.length; i++) {
+            unpopulated.put(documents[i], i);
+        }
+        final GeneralizedSuffixTree other = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents).subList(0, 100));
+
+        // the visitors query another tree and the tree itself, which must not cut the outer query short
+        final String target = documents[0];
+        final HashSet<Integer> expectedInner = other.getSimilarStringIndexes(target, 0.5f);
+        final List<SimilarDocument> expectedTopK = in.getTopKSimilar(target, 3);
+        for (GeneralizedSuffixTree tree : new GeneralizedSuffixTree[]{in, unpopulated}) {
+            final HashSet<Integer> visited = new HashSet<Integer>();
+            assertTrue(tree.search("ab", id -> {
+                visited.add(id);
+                assertEquals(expectedInner, other.getSimilarStringIndexes(target, 0.5f));
+                assertEquals(expectedTopK, in.getTopKSimilar(target, 3));
+                return true;
+            }));
+            assertEquals(new HashSet<Integer>(tree.search("ab")), visited);
+        }
+        final HashSet<Integer> visited = new HashSet<Integer>();
+        assertTrue(in.getSimilarStringIndexes(target, 0.3f, id -> {
+            visited.add(id);
+            assertEquals(expectedInner, other.getSimilarStringIndexes(target, 0.5f));
+            assertEquals(in.search(documents[id]).size(), in.countDocumentsContaining(documents[id]));
+            return true;
+        }));
+        assertEquals(in.getSimilarStringIndexes(target, 0.3f), visited);
+
+        // a set stored as a bitmap is visited from its bits, up to the first index the visitor stops at
+        assertNotNull(in.searchNode("a").indexBitmap);
+        final int[] visits = new int[1];
+        assertFalse(in.search("a", id -> ++visits[0] < 3));
+        assertEquals(3, visits[0]);
+    }
+
+    public void testVisitors() {
+        Random random = new Random(61);
+        for (int trial = 0; trial < 50; trial++) {
+            String[] documents = randomDocuments(random);
+            GeneralizedSuffixTree[] trees = resultTrees(documents, trial);
+            GeneralizedSuffixTree populated = trees[1], frozen = trees[2];
+
+            for (String s : querySubstrings(documents)) {
+                for (GeneralizedSuffixTree in : trees) {
+                    HashSet<Integer> expected = new HashSet<Integer>(in.search(s));
+                    assertVisits(expected, in, s, -1);
+                }
+            }
+            for (String document : documents) {
+                for (float threshold : new float[]{0.1f, 0.4f, 0.7f}) {
+                    for (GeneralizedSuffixTree in : new GeneralizedSuffixTree[]{populated, frozen}) {
+                        HashSet<Integer> expected = in.getSimilarStringIndexes(document, threshold);
+                        assertVisits(expected, in, document, threshold);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a visit of the matches of <tt>s</tt>, a search if <tt>threshold</tt> is negative, goes over the
+     * expected indexes once each, and that it stops when the visitor returns false.
+     */
+    private static void assertVisits(HashSet<Integer> expected, GeneralizedSuffixTree in, String s, float threshold) {
+        for (final int limit : new int[]{expected.size(), expected.size() + 1, Math.max(1, expected.size() / 2), 1}) {
+            final List<Integer> visited = new ArrayList<Integer>();
+            IntPredicate visitor = new IntPredicate() {
+                public boolean test(int index) {
+                    visited.add(index);
+                    return visited.size() < limit;
+                }
+            };
+            boolean completed = threshold < 0 ? in.search(s, visitor) : in.getSimilarStringIndexes(s, threshold, visitor);
+
+            assertEquals(s, Math.min(limit, expected.size()), visited.size());
+            assertEquals(s, visited.size(), new HashSet<Integer>(visited).size());
+            assertTrue(s, expected.containsAll(visited));
+            assertEquals(s, limit > expected.size() || expected.isEmpty(), completed);
+        }
+    }
+
+    public void testCountDocumentsContaining() {
+        Random random = new Random(83);
+        for (int trial = 0; trial < 50; trial++) {
+            String[] documents = randomDocuments(random);
+            GeneralizedSuffixTree[] trees = resultTrees(documents, trial);
+            GeneralizedSuffixTree repaired = new GeneralizedSuffixTree();
+            for (int i = 0; i < documents.length; i++) {
+                repaired.put(documents[i], i);
+                if (i == documents.length / 2) {
+                    repaired.populateIndices();
+                }
+            }
+            GeneralizedSuffixTree lazy = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+            lazy.populateIndicesLazily();
+            GeneralizedSuffixTree cut = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents), 1, 0.3f);
+            cut.freeze(GeneralizedSuffixTree.PostingFormat.LISTING);
+
+            List<String> substrings = querySubstrings(documents);
+            for (GeneralizedSuffixTree in : new GeneralizedSuffixTree[]{trees[0], repaired, lazy, trees[2], cut}) {
+                int[] counts = in.countDocumentsContaining(substrings);
+                for (int i = 0; i < substrings.size(); i++) {
+                    String s = substrings.get(i);
+                    int expected = new HashSet<Integer>(in.search(s)).size();
+                    assertEquals(s, expected, in.countDocumentsContaining(s));
+                    assertEquals(s, expected, counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to 12 random documents, shorter than 15 characters over an alphabet of 3
+     */
+    private static String[] randomDocuments(Random random) {
+        String[] documents = new String[1 + random.nextInt(12)];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = randomString(random, 15, 3);
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the trees the result forms are checked on: an unpopulated one whose documents share their indexes
+     * two by two, a bulk loaded one, and one frozen in the posting format picked by <tt>trial</tt>
+     */
+    private static GeneralizedSuffixTree[] resultTrees(String[] documents, int trial) {
+        GeneralizedSuffixTree unpopulated = new GeneralizedSuffixTree();
+        for (int i = 0; i < documents.length; i++) {
+            unpopulated.put(documents[i], i / 2);
+        }
+        GeneralizedSuffixTree populated = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+        GeneralizedSuffixTree frozen = GeneralizedSuffixTree.bulkLoad(Arrays.asList(documents));
+        frozen.freeze(GeneralizedSuffixTree.PostingFormat.values()[trial % 3]);
+        return new GeneralizedSuffixTree[]{unpopulated, populated, frozen};
+    }
+
+    /**
+     * Returns the substrings of the documents, along with ones that run past their end
+     */
+    private static List<String> querySubstrings(String[] documents) {
+        List<String> substrings = new ArrayList<String>();
+        for (String document : documents) {
+            substrings.addAll(getSubstrings(document + "ab"));
+        }
+        return substrings;
+    }
+
+    private static HashSet<Integer> toSet(int[] indexes) {
+        HashSet<Integer> set = new HashSet<Integer>();
+        for (int index : indexes) {
+            set.add(index);
+        }
+        return set;
+    }
+
+    private static void assertSorted(int[] indexes) {
+        for (int i = 1; i < indexes.length; i++) {
+            assertTrue(indexes[i - 1] < indexes[i]);
+        }
+    }
+
+    private static String randomString(Random random, int maxLength, int alphabet) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(maxLength);
+        for (int j = 0; j < length; j++) {
+            builder.append((char) ('a' + random.nextInt(alphabet)));
+        }
+        return builder.toString();
+    }
 }
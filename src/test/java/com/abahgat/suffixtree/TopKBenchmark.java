@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Mert Erpam
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.abahgat.suffixtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures getTopKSimilar against ranking the result of getSimilarStringIndexes by recomputing the similarities,
+ * on the corpus of QueryBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class TopKBenchmark {
+
+    @Param({"20000"})
+    private int documentCount;
+
+    @Param({"10"})
+    private int k;
+
+    private List<String> documents;
+    private String[] queries;
+    private GeneralizedSuffixTree tree;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        documents = new ArrayList<String>();
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(QueryBenchmark.randomDocument(random));
+        }
+        queries = new String[64];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = documents.get(random.nextInt(documentCount));
+        }
+
+        tree = GeneralizedSuffixTree.bulkLoad(documents);
+    }
+
+    @Benchmark
+    public void topK(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(tree.getTopKSimilar(query, k));
+        }
+    }
+
+    @Benchmark
+    public void similarThenRank(Blackhole blackhole) {
+        for (final String query : queries) {
+            List<SimilarDocument> ranking = new ArrayList<SimilarDocument>();
+            for (int index : tree.getSimilarStringIndexes(query, 0.3f)) {
+                ranking.add(new SimilarDocument(index, Utils.getSimilarity(query, documents.get(index))));
+            }
+            Collections.sort(ranking, new Comparator<SimilarDocument>() {
+                public int compare(SimilarDocument a, SimilarDocument b) {
+                    return Float.compare(b.getSimilarity(), a.getSimilarity());
+                }
+            });
+            blackhole.consume(ranking.subList(0, Math.min(k, ranking.size())));
+        }
+    }
+}